@@ -0,0 +1,127 @@
+package org.huex.liarbarback;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.metrics.GameMetrics;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.transport.ClientChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// MsgHandler.broadcastRoom 在内存中的假会话上的开销，发送的帧交给 Blackhole 消费
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BroadcastBenchmark {
+    @Param({"2", "4", "8"})
+    int players;
+
+    @Param({"JSON", "BINARY"})
+    WireFormat format;
+
+    MsgHandler msgHandler;
+    Room room;
+    Player player;
+
+    @Setup
+    public void prepare(Blackhole blackhole) {
+        PlayerManager playerManager = new PlayerManager();
+        RoomManager roomManager = new RoomManager();
+        SessionManager sessionManager = new SessionManager();
+        ReflectionTestUtils.setField(roomManager, "playerManager", playerManager);
+        ReflectionTestUtils.setField(sessionManager, "playerManager", playerManager);
+        ReflectionTestUtils.setField(sessionManager, "roomManager", roomManager);
+        GameMetrics metrics = new GameMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(metrics, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(metrics, "roomManager", roomManager);
+        ReflectionTestUtils.setField(metrics, "playerManager", playerManager);
+        RoomUpdateBus roomUpdates = new RoomUpdateBus();
+        ReflectionTestUtils.setField(roomUpdates, "roomManager", roomManager);
+        ReflectionTestUtils.setField(metrics, "roomUpdates", roomUpdates);
+        metrics.register();
+
+        msgHandler = new MsgHandler();
+        msgHandler.roomManager = roomManager;
+        msgHandler.playerManager = playerManager;
+        msgHandler.sessionManager = sessionManager;
+        msgHandler.metrics = metrics;
+        msgHandler.roomUpdates = roomUpdates;
+
+        room = roomManager.createRoom("user0");
+        for (int i=1;i<players;i++) {
+            Player p = new Player("user" + i);
+            p.setRoomId(room.getId());
+            playerManager.addPlayer(p);
+            room.addPlayer(p);
+        }
+        for (Player p : room.getPlayerList()) {
+            ClientChannel session = fakeSession(format, blackhole);
+            sessionManager.addSession(p.getUserId(), session);
+            p.setChannel(session);
+        }
+        room.startGame(20250801L);
+        player = room.getPlayerList().get(0);
+        msgHandler.broadcastRoom(room);
+    }
+
+    /**
+     * 只改变一个玩家的准备状态，发送公共增量
+     */
+    @Benchmark
+    public void broadcastDelta() {
+        player.setReady(!player.isReady());
+        room.markUpdated();
+        msgHandler.broadcastRoom(room);
+    }
+
+    /**
+     * 丢弃已广播状态，强制发送完整快照
+     */
+    @Benchmark
+    public void broadcastSnapshot() {
+        room.setBroadcastState(null);
+        room.markUpdated();
+        msgHandler.broadcastRoom(room);
+    }
+
+    static ClientChannel fakeSession(WireFormat format, Blackhole blackhole) {
+        Map<String, Object> attributes = new HashMap<>();
+        ClientChannel session = new ClientChannel() {
+            public String getUserId() { return null; }
+            public String getSubprotocol() { return format==WireFormat.BINARY ? WireFormat.BINARY_SUBPROTOCOL : null; }
+            public boolean isOpen() { return true; }
+            public Map<String, Object> getAttributes() { return attributes; }
+            public void sendText(String text, Consumer<Throwable> callback) {
+                blackhole.consume(text);
+                callback.accept(null);
+            }
+            public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) {
+                blackhole.consume(bytes);
+                callback.accept(null);
+            }
+            public void close(int code, String reason) {}
+        };
+        WireFormat.negotiate(session);
+        return session;
+    }
+}
@@ -0,0 +1,82 @@
+package org.huex.liarbarback.models;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.huex.liarbarback.models.Message.MsgType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jakarta.websocket.DecodeException;
+import jakarta.websocket.EncodeException;
+
+// 编解码：整个房间的编码，以及 WebSocketServer.onMessage 收到的文本和二进制消息的解码
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+    @Param({"2", "8"})
+    int players;
+
+    final MessageEncoder encoder = new MessageEncoder();
+    final MessageDecoder decoder = new MessageDecoder();
+    final MessageBinaryDecoder binaryDecoder = new MessageBinaryDecoder();
+
+    Room room;
+    Message<Room> roomMessage;
+    String playCardsText;
+    byte[] playCardsBinary;
+
+    @Setup
+    public void prepare() {
+        room = new Room("BENCH1");
+        for (int i=0;i<players;i++) {
+            room.addPlayer(new Player("user" + i));
+        }
+        room.startGame(20250801L);
+        roomMessage = new Message<>(MsgType.ROOM_PLAYERS_LIST, room);
+
+        Message<PlayCards> play = new Message<>(MsgType.PLAY_CARDS,
+            new PlayCards(Card.listOf(0x3L), Card.Rank.ACE));
+        playCardsText = new EncodedMessage(play).text();
+        ByteBuffer binary = new EncodedMessage(play).binary();
+        playCardsBinary = new byte[binary.remaining()];
+        binary.get(playCardsBinary);
+    }
+
+    @Benchmark
+    public String encodeRoom() throws EncodeException {
+        return encoder.encode(roomMessage);
+    }
+
+    /**
+     * 广播实际使用的路径：每个版本生成一次帧，再为接收者拼接手牌
+     */
+    @Benchmark
+    public String roomFrameForUser() {
+        room.markUpdated();
+        return RoomFrame.of(room).forUser("user0");
+    }
+
+    @Benchmark
+    public ByteBuffer roomFrameForUserBinary() {
+        room.markUpdated();
+        return RoomFrame.of(room).forUserBinary("user0");
+    }
+
+    @Benchmark
+    public Message<?> decodeText() throws DecodeException {
+        return decoder.decode(playCardsText);
+    }
+
+    @Benchmark
+    public Message<?> decodeBinary() throws DecodeException {
+        return binaryDecoder.decode(ByteBuffer.wrap(playCardsBinary));
+    }
+}
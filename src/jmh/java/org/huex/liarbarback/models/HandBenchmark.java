@@ -0,0 +1,44 @@
+package org.huex.liarbarback.models;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 手牌和出牌之间移动牌（原来的 Card.moveCards，现在是位掩码操作）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandBenchmark {
+    Player player;
+    List<Card> cards;
+
+    @Setup
+    public void deal() {
+        player = new Player("user0");
+        player.addCards(0x0F0F0F0F0F0FL);
+        cards = Card.listOf(0x000000000F0FL);
+    }
+
+    /**
+     * 打出四张牌再全部收回，状态保持不变
+     */
+    @Benchmark
+    public long playAndTakeBack() {
+        player.playCards(cards);
+        long played = player.takePlayedCards();
+        player.addCards(played);
+        return played;
+    }
+
+    @Benchmark
+    public List<Card> listHand() {
+        return player.getHandCards();
+    }
+}
@@ -0,0 +1,102 @@
+package org.huex.liarbarback.models;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 游戏引擎的单步操作。出牌、质疑和跳过每次调用前都用固定种子重新开局，只在这个已知状态上执行一次；
+// 这几项耗时接近计时精度，应主要看相对变化和 gc 分配率
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoomBenchmark {
+    private static final long SEED = 20250801L;
+
+    @State(Scope.Thread)
+    public static class Game {
+        @Param({"2", "4", "8"})
+        int players;
+
+        Room room;
+        PlayCards firstPlay;
+        String firstPlayer;
+        String secondPlayer;
+
+        @Setup(Level.Trial)
+        public void createRoom() {
+            room = new Room("BENCH1");
+            for (int i=0;i<players;i++) {
+                room.addPlayer(new Player("user" + i));
+            }
+        }
+
+        /**
+         * 重新开局，准备好第一个玩家出一张牌
+         */
+        void deal() {
+            room.restartGame();
+            room.startGame(SEED);
+            Player first = room.getPlayerList().get(0);
+            Card card = Card.firstOf(first.getHand());
+            firstPlay = new PlayCards(List.of(card), card.getRank());
+            firstPlayer = first.getUserId();
+            secondPlayer = room.getPlayerList().get(1).getUserId();
+        }
+    }
+
+    // 刚开局，轮到第一个玩家出牌。
+    // 注入到 Setup 的 Game 和注入到基准方法的 Game 不是同一个实例，所以基准方法通过这里的引用访问
+    @State(Scope.Thread)
+    public static class Dealt {
+        Game game;
+
+        @Setup(Level.Invocation)
+        public void prepare(Game game) {
+            this.game = game;
+            game.deal();
+        }
+    }
+
+    // 第一个玩家已经出牌，轮到第二个玩家质疑或跳过
+    @State(Scope.Thread)
+    public static class Claimed {
+        Game game;
+
+        @Setup(Level.Invocation)
+        public void prepare(Game game) {
+            this.game = game;
+            game.deal();
+            game.room.playCards(game.firstPlay, game.firstPlayer);
+        }
+    }
+
+    @Benchmark
+    public boolean startGame(Game game) {
+        game.room.restartGame();
+        return game.room.startGame(SEED);
+    }
+
+    @Benchmark
+    public boolean playCards(Dealt dealt) {
+        Game game = dealt.game;
+        return game.room.playCards(game.firstPlay, game.firstPlayer);
+    }
+
+    @Benchmark
+    public boolean challenge(Claimed claimed) {
+        return claimed.game.room.challenge(claimed.game.secondPlayer);
+    }
+
+    @Benchmark
+    public boolean skip(Claimed claimed) {
+        return claimed.game.room.skip(claimed.game.secondPlayer);
+    }
+}
@@ -0,0 +1,338 @@
+package org.huex.liarbarback.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 一个无界面的玩家：通过 JSON 协议连接服务器，根据收到的快照和增量维护房间视图，轮到自己时出合法的牌。
+ * 监听器回调对同一个连接是串行的，只有 poke() 来自别的线程，两者用 this 互斥；发送按顺序串在 sending 上，上一条发完才发下一条。
+ */
+public class Bot implements WebSocket.Listener {
+    // MsgType 序号，和服务端的枚举顺序一致
+    static final int CREATE_ROOM = 0, JOIN_ROOM = 1, PREPARE = 5, START_GAME = 7,
+        PLAY_CARDS = 8, SKIP = 9, CHALLENGE = 10, RESTART = 11,
+        WELCOME = 12, ROOM_PLAYERS_LIST = 17, RESYNC = 35, ROOM_DELTA = 36;
+    private static final int NO_CLAIM = 0;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Table table;
+    private final String userId;
+    private final boolean host;
+    private final LoadStats stats;
+    private final SplittableRandom random;
+
+    private WebSocket webSocket;
+    private CompletableFuture<WebSocket> sending;
+    private final StringBuilder partial = new StringBuilder();
+
+    // 房间视图
+    private String roomId;
+    private long version = -1;
+    private boolean started;
+    private boolean ended;
+    private int currentPlayerIndex;
+    private int roundBeginnerIndex;
+    private int claimRank;
+    private final List<String> userIds = new ArrayList<>();
+    private final List<Boolean> ready = new ArrayList<>();
+    private final List<JsonNode> hand = new ArrayList<>();
+
+    // 已发出、等待广播确认的操作
+    private long pendingSince; // 0 表示没有
+    private long pendingVersion;
+    private boolean preparing;
+    private boolean starting;
+    private boolean restarting;
+    private long actedVersion = -1;
+    private volatile long lastReceived = System.nanoTime();
+
+    /**
+     * 同一张桌子的玩家。房主先连接并创建房间，拿到房间号后其他玩家再连接加入
+     */
+    public static class Table {
+        final int size;
+        final CompletableFuture<String> roomId = new CompletableFuture<>();
+
+        public Table(int size) {
+            this.size = size;
+        }
+
+        public CompletableFuture<String> getRoomId() {
+            return roomId;
+        }
+    }
+
+    public Bot(Table table, String userId, boolean host, LoadStats stats, long seed) {
+        this.table = table;
+        this.userId = userId;
+        this.host = host;
+        this.stats = stats;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public CompletableFuture<WebSocket> connect(HttpClient client, URI server) {
+        return client.newWebSocketBuilder()
+            .buildAsync(server.resolve("/api/ws/" + userId), this)
+            .thenApply(ws -> {
+                stats.connections.incrementAndGet();
+                return ws;
+            });
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        this.sending = CompletableFuture.completedFuture(webSocket);
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String text = partial.toString();
+            partial.setLength(0);
+            try {
+                handle(mapper.readTree(text));
+            } catch (Exception e) {
+                stats.errors.incrementAndGet();
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        stats.connections.decrementAndGet();
+        stats.closed.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.connections.decrementAndGet();
+        stats.errors.incrementAndGet();
+    }
+
+    /**
+     * 服务端可能丢掉广播（发送失败），整桌人都在等时就再也不会有人行动。
+     * 由 LoadTest 定期调用，超过 idleNanos 没有收到消息时重新获取快照
+     */
+    public synchronized void poke(long now, long idleNanos) {
+        if (webSocket == null || now - lastReceived < idleNanos) return;
+        lastReceived = now;
+        stats.resyncs.incrementAndGet();
+        actedVersion = -1;
+        send(RESYNC, mapper.getNodeFactory().numberNode(-1), false);
+    }
+
+    private synchronized void handle(JsonNode message) {
+        lastReceived = System.nanoTime();
+        if (!message.isObject()) {
+            // 服务端解析失败时回复的是纯文本
+            stats.errors.incrementAndGet();
+            return;
+        }
+        int msgType = message.path("msgType").asInt(-1);
+        JsonNode data = message.path("data");
+        switch (msgType) {
+            case WELCOME -> {
+                if (host) {
+                    send(CREATE_ROOM, null, false);
+                } else {
+                    send(JOIN_ROOM, mapper.getNodeFactory().textNode(table.roomId.join()), false);
+                }
+            }
+            case ROOM_PLAYERS_LIST -> applySnapshot(data);
+            case ROOM_DELTA -> {
+                if (data.path("baseVersion").asLong() != version) {
+                    stats.resyncs.incrementAndGet();
+                    send(RESYNC, mapper.getNodeFactory().numberNode(version), false);
+                    return;
+                }
+                applyDelta(data);
+            }
+            case RESYNC -> {
+            }
+            default -> {
+                // 错误响应：操作被拒绝，重新获取快照后再决定
+                stats.rejected.incrementAndGet();
+                pendingSince = 0;
+                actedVersion = -1;
+                preparing = starting = restarting = false;
+                send(RESYNC, mapper.getNodeFactory().numberNode(-1), false);
+            }
+        }
+    }
+
+    private void applySnapshot(JsonNode room) {
+        if (room.path("id").isMissingNode()) return;
+        roomId = room.path("id").asText();
+        version = room.path("version").asLong();
+        started = room.path("started").asBoolean();
+        ended = room.path("ended").asBoolean();
+        currentPlayerIndex = room.path("currentPlayerIndex").asInt();
+        roundBeginnerIndex = room.path("roundBeginnerIndex").asInt();
+        claimRank = room.path("currentClaimRank").asInt();
+        userIds.clear();
+        ready.clear();
+        hand.clear();
+        for (JsonNode player : room.path("playerList")) {
+            userIds.add(player.path("userId").asText());
+            ready.add(player.path("ready").asBoolean());
+            if (userId.equals(player.path("userId").asText())) {
+                player.path("handCards").forEach(hand::add);
+            }
+        }
+        if (host) {
+            table.roomId.complete(roomId);
+        }
+        updated();
+    }
+
+    private void applyDelta(JsonNode delta) {
+        version = delta.path("version").asLong();
+        if (delta.has("currentPlayerIndex")) currentPlayerIndex = delta.get("currentPlayerIndex").asInt();
+        if (delta.has("roundBeginnerIndex")) roundBeginnerIndex = delta.get("roundBeginnerIndex").asInt();
+        if (delta.has("currentClaimRank")) claimRank = delta.get("currentClaimRank").asInt();
+        if (delta.has("ended")) ended = delta.get("ended").asBoolean();
+        for (JsonNode player : delta.path("players")) {
+            int index = player.path("index").asInt();
+            if (player.has("ready")) ready.set(index, player.get("ready").asBoolean());
+            if (player.has("handCards")) {
+                hand.clear();
+                player.get("handCards").forEach(hand::add);
+            }
+        }
+        updated();
+    }
+
+    /**
+     * 收到新状态：确认等待中的操作，再决定下一步
+     */
+    private void updated() {
+        if (pendingSince != 0 && version > pendingVersion) {
+            stats.latency.recordNanos(System.nanoTime() - pendingSince);
+            pendingSince = 0;
+        }
+        int me = userIds.indexOf(userId);
+        if (me < 0) return;
+        if (!started) {
+            restarting = false;
+            if (!ready.get(me) && !preparing) {
+                preparing = true;
+                send(PREPARE, mapper.getNodeFactory().booleanNode(true), true);
+            } else if (ready.get(me)) {
+                preparing = false;
+            }
+            if (host && !starting && userIds.size() == table.size && !ready.contains(false)) {
+                starting = true;
+                send(START_GAME, null, true);
+            }
+            return;
+        }
+        starting = false;
+        if (ended) {
+            if (host && !restarting) {
+                restarting = true;
+                stats.games.incrementAndGet();
+                send(RESTART, null, true);
+            }
+            return;
+        }
+        if (currentPlayerIndex == me && actedVersion < version) {
+            actedVersion = version;
+            takeTurn(me);
+        }
+    }
+
+    private void takeTurn(int me) {
+        if (claimRank == NO_CLAIM) {
+            // 新一轮的第一个出牌者：如实出一到两张同点数的牌
+            if (hand.isEmpty()) {
+                // 规则上既不能出牌也不能跳过，这一局卡住了，直接重开
+                stats.stalled.incrementAndGet();
+                send(RESTART, null, true);
+                return;
+            }
+            JsonNode first = hand.get(random.nextInt(hand.size()));
+            int rank = first.path("rank").asInt();
+            playCards(cardsOfRank(rank, 2), rank);
+            return;
+        }
+        if (hand.isEmpty() || (me == roundBeginnerIndex)) {
+            send(SKIP, null, true);
+            return;
+        }
+        int roll = random.nextInt(100);
+        if (roll < 20) {
+            send(CHALLENGE, null, true);
+            return;
+        }
+        List<JsonNode> matching = cardsOfRank(claimRank, 3);
+        if (!matching.isEmpty()) {
+            playCards(matching, claimRank);
+        } else if (roll < 60) {
+            // 虚张声势
+            playCards(List.of(hand.get(random.nextInt(hand.size()))), claimRank);
+        } else {
+            send(SKIP, null, true);
+        }
+    }
+
+    private List<JsonNode> cardsOfRank(int rank, int limit) {
+        List<JsonNode> cards = new ArrayList<>();
+        for (JsonNode card : hand) {
+            if (card.path("rank").asInt() == rank && cards.size() < limit) cards.add(card);
+        }
+        return cards;
+    }
+
+    private void playCards(List<JsonNode> cards, int rank) {
+        ObjectNode data = mapper.createObjectNode();
+        ArrayNode array = data.putArray("cards");
+        cards.forEach(array::add);
+        data.put("claimRank", rank);
+        send(PLAY_CARDS, data, true);
+    }
+
+    /**
+     * measured 为 true 的操作计入操作到广播的延迟
+     */
+    private void send(int msgType, JsonNode data, boolean measured) {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("msgType", msgType);
+        if (data != null) message.set("data", data);
+        String text = message.toString();
+        if (measured) {
+            pendingSince = System.nanoTime();
+            pendingVersion = version;
+            stats.actions.incrementAndGet();
+        }
+        sending = sending
+            .thenCompose(ws -> ws.sendText(text, true))
+            .exceptionally(error -> {
+                stats.errors.incrementAndGet();
+                return webSocket;
+            });
+    }
+
+    public void close() {
+        if (webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.huex.liarbarback.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 微秒精度的对数-线性直方图，多个线程可以同时记录。
+ * 小于 64us 的值精确记录，更大的值每个 2 的幂区间分成 32 个桶，相对误差约 3%。
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int BUCKETS = LINEAR + 58 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void recordNanos(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos / 1000)));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        return total;
+    }
+
+    /**
+     * 百分位对应的微秒数（桶的上界），没有数据时返回 0
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(rank, 1)) return upperBoundOf(i);
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    public long maxMicros() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) return upperBoundOf(i);
+        }
+        return 0;
+    }
+
+    static int indexOf(long micros) {
+        if (micros < LINEAR) return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 5; // micros >> shift 落在 [32, 64)
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((micros >> shift) - SUB_BUCKETS);
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR) return index;
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
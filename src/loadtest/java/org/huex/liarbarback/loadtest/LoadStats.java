@@ -0,0 +1,17 @@
+package org.huex.liarbarback.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// 所有机器人共享的计数器
+public class LoadStats {
+    final AtomicLong connections = new AtomicLong();
+    final AtomicLong closed = new AtomicLong();
+    final AtomicLong actions = new AtomicLong(); // 计入延迟的操作数
+    final AtomicLong games = new AtomicLong(); // 打完的局数
+    final AtomicLong stalled = new AtomicLong(); // 新一轮轮到没有手牌的玩家，无法继续只能重开的局数
+    final AtomicLong rejected = new AtomicLong(); // 服务端返回错误的操作
+    final AtomicLong resyncs = new AtomicLong();
+    final AtomicLong errors = new AtomicLong(); // 连接或协议错误
+    final AtomicLong spectatorFrames = new AtomicLong(); // 观众收到的房间帧
+    final LatencyHistogram latency = new LatencyHistogram();
+}
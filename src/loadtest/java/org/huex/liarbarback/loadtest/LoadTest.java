@@ -0,0 +1,159 @@
+package org.huex.liarbarback.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.huex.liarbarback.LiarBarBackApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * 压测入口：在本机启动服务（或连接 --url 指定的服务），开 rooms * players 个机器人连接打完整的对局，
+ * 定期输出吞吐，结束时输出操作到广播的延迟分布。
+ *
+ * mvn -Ploadtest -DskipTests verify -Dloadtest.args="--rooms=500 --players=4 --duration=60"
+ *
+ * 参数：
+ *   --rooms      桌数，默认 100
+ *   --players    每桌人数，默认 4
+ *   --duration   压测秒数（所有连接建立之后开始计时），默认 30
+ *   --ramp       每秒建立的桌数，默认 200
+ *   --spectators 每桌的观众数，默认 0；观众连接第一个地址
+ *   --url        已运行的服务地址，例如 ws://localhost:5500；不指定时在本进程内启动服务。
+ *                多个地址用逗号分隔时，每桌的第 p 个座位连接第 p % n 个地址，用来测试多节点共享房间
+ */
+public class LoadTest {
+    // 机器人超过这个时间没有收到消息就重新获取快照
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int rooms = Integer.parseInt(options.getOrDefault("rooms", "100"));
+        int players = Integer.parseInt(options.getOrDefault("players", "4"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int ramp = Integer.parseInt(options.getOrDefault("ramp", "200"));
+        int spectators = Integer.parseInt(options.getOrDefault("spectators", "0"));
+
+        ConfigurableApplicationContext context = null;
+        List<URI> servers = new ArrayList<>();
+        if (options.containsKey("url")) {
+            for (String url : options.get("url").split(",")) {
+                servers.add(URI.create(url));
+            }
+        } else {
+            context = SpringApplication.run(LiarBarBackApplication.class, "--server.port=0",
+                "--liarbar.snapshot.interval-ms=0");
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            servers.add(URI.create("ws://localhost:" + port));
+        }
+        System.out.println("Load test against " + servers + ": " + rooms + " rooms x " + players + " players, "
+            + duration + "s");
+
+        LoadStats stats = new LoadStats();
+        HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()))
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+        List<Bot> bots = new ArrayList<>();
+        List<Spectator> audience = new ArrayList<>();
+        List<CompletableFuture<?>> tables = new ArrayList<>();
+        long rampStart = System.nanoTime();
+        for (int r = 0; r < rooms; r++) {
+            Bot.Table table = new Bot.Table(players);
+            Bot host = new Bot(table, "bot-" + r + "-0", true, stats, r * 31L);
+            bots.add(host);
+            List<CompletableFuture<?>> guests = new ArrayList<>();
+            CompletableFuture<String> roomId = host.connect(client, servers.get(0))
+                .thenCompose(ws -> table.getRoomId());
+            for (int p = 1; p < players; p++) {
+                Bot guest = new Bot(table, "bot-" + r + "-" + p, false, stats, r * 31L + p);
+                bots.add(guest);
+                URI server = servers.get(p % servers.size());
+                // 房主建好房间后其他人再连接
+                guests.add(roomId.thenCompose(id -> guest.connect(client, server)));
+            }
+            for (int s = 0; s < spectators; s++) {
+                Spectator spectator = new Spectator("spectator-" + r + "-" + s, table.getRoomId(), stats);
+                audience.add(spectator);
+                guests.add(roomId.thenCompose(id -> spectator.connect(client, servers.get(0))));
+            }
+            tables.add(CompletableFuture.allOf(guests.toArray(CompletableFuture[]::new)));
+            long due = rampStart + TimeUnit.SECONDS.toNanos(r + 1) / ramp;
+            long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        try {
+            CompletableFuture.allOf(tables.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.out.println("Some tables failed to connect: " + e);
+        }
+        System.out.println("Connected " + stats.connections.get() + " bots in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - rampStart) + "ms");
+
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        watchdog.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            bots.forEach(bot -> bot.poke(now, IDLE_NANOS));
+        }, 1, 1, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        long startActions = stats.actions.get();
+        long startGames = stats.games.get();
+        long startFrames = stats.spectatorFrames.get();
+        long lastActions = startActions;
+        for (int second = 5; second <= duration; second += 5) {
+            TimeUnit.SECONDS.sleep(5);
+            long actions = stats.actions.get();
+            System.out.printf("[%3ds] connections=%d actions/s=%d games=%d stalled=%d rejected=%d resyncs=%d errors=%d%n",
+                second, stats.connections.get(), (actions - lastActions) / 5, stats.games.get() - startGames,
+                stats.stalled.get(), stats.rejected.get(), stats.resyncs.get(), stats.errors.get());
+            lastActions = actions;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("--------------------------------------------------------------------");
+        System.out.printf("Throughput: %.0f actions/s, %.1f games/s%n",
+            (stats.actions.get() - startActions) / seconds, (stats.games.get() - startGames) / seconds);
+        System.out.printf("Action-to-broadcast latency (us): p50=%d p99=%d p999=%d max=%d (n=%d)%n",
+            stats.latency.percentileMicros(50), stats.latency.percentileMicros(99),
+            stats.latency.percentileMicros(99.9), stats.latency.maxMicros(), stats.latency.count());
+        if (spectators > 0) {
+            System.out.printf("Spectators: %d, %.0f frames/s received%n",
+                audience.size(), (stats.spectatorFrames.get() - startFrames) / seconds);
+        }
+        System.out.printf("Stalled=%d rejected=%d resyncs=%d errors=%d closed=%d%n",
+            stats.stalled.get(), stats.rejected.get(), stats.resyncs.get(), stats.errors.get(), stats.closed.get());
+        System.out.println("--------------------------------------------------------------------");
+
+        watchdog.shutdownNow();
+        bots.forEach(Bot::close);
+        audience.forEach(Spectator::close);
+        TimeUnit.SECONDS.sleep(1);
+        if (context != null) {
+            context.close();
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
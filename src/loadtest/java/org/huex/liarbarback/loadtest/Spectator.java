@@ -0,0 +1,98 @@
+package org.huex.liarbarback.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 一个观众：连接后观看指定房间，只统计收到的公共帧，版本倒退时记为错误
+ */
+public class Spectator implements WebSocket.Listener {
+    static final int SPECTATE_ROOM = 37;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String userId;
+    private final CompletableFuture<String> roomId;
+    private final LoadStats stats;
+    private final StringBuilder partial = new StringBuilder();
+    private WebSocket webSocket;
+    private long version = -1;
+
+    public Spectator(String userId, CompletableFuture<String> roomId, LoadStats stats) {
+        this.userId = userId;
+        this.roomId = roomId;
+        this.stats = stats;
+    }
+
+    public CompletableFuture<WebSocket> connect(HttpClient client, URI server) {
+        return client.newWebSocketBuilder()
+            .buildAsync(server.resolve("/api/ws/" + userId), this);
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String text = partial.toString();
+            partial.setLength(0);
+            try {
+                handle(text);
+            } catch (Exception e) {
+                stats.errors.incrementAndGet();
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    /**
+     * 观众和玩家跑在同一台机器上，不做完整的 JSON 解析，只取消息类型和房间版本
+     */
+    private void handle(String text) {
+        int msgType = (int) number(text, "\"msgType\":");
+        if (msgType == Bot.WELCOME) {
+            String message = mapper.createObjectNode()
+                .put("msgType", SPECTATE_ROOM)
+                .put("data", roomId.join())
+                .toString();
+            webSocket.sendText(message, true);
+        } else if (msgType == Bot.ROOM_PLAYERS_LIST) {
+            long received = number(text, "\"version\":");
+            if (received < version) stats.errors.incrementAndGet();
+            version = received;
+            stats.spectatorFrames.incrementAndGet();
+        }
+    }
+
+    private static long number(String text, String key) {
+        int i = text.indexOf(key);
+        if (i < 0) return -1;
+        long value = 0;
+        for (i += key.length(); i < text.length() && Character.isDigit(text.charAt(i)); i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.errors.incrementAndGet();
+    }
+
+    public void close() {
+        if (webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.huex.liarbarback;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.huex.liarbarback.journal.GameJournal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JournalConfig {
+
+    /**
+     * 操作日志，关闭时返回不记录任何操作的实例
+     */
+    @Bean
+    public GameJournal gameJournal(@Value("${liarbar.journal.enabled:false}") boolean enabled,
+                                   @Value("${liarbar.journal.dir:data/journal}") String dir,
+                                   @Value("${liarbar.journal.segment-records:65536}") int segmentRecords,
+                                   @Value("${liarbar.journal.fsync:true}") boolean fsync,
+                                   @Value("${liarbar.journal.retain-segments:4}") int retainSegments,
+                                   @Value("${liarbar.journal.queue-capacity:65536}") int capacity) throws IOException {
+        if (!enabled) return GameJournal.disabled();
+        return new GameJournal(Path.of(dir), segmentRecords, fsync, retainSegments, capacity);
+    }
+}
@@ -1,346 +1,668 @@
 package org.huex.liarbarback;
 
-import org.huex.liarbarback.events.RoomUpdatedEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import org.huex.liarbarback.concurrent.InboundExecutors;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.journal.JournalOp;
+import org.huex.liarbarback.journal.JournalReplay;
 import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.Reaper;
 import org.huex.liarbarback.managers.RoomManager;
 import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.managers.TurnTimer;
+import org.huex.liarbarback.metrics.GameMetrics;
+import org.huex.liarbarback.models.Card;
+import org.huex.liarbarback.models.EncodedMessage;
 import org.huex.liarbarback.models.Message;
 import org.huex.liarbarback.models.Message.MsgType;
 import org.huex.liarbarback.models.PlayCards;
 import org.huex.liarbarback.models.Player;
 import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.models.RoomDelta;
+import org.huex.liarbarback.models.RoomFrame;
+import org.huex.liarbarback.models.RoomState;
+import org.huex.liarbarback.spectators.SpectatorFanout;
+import org.huex.liarbarback.store.RoomSync;
+import org.huex.liarbarback.trace.Trace;
+import org.huex.liarbarback.trace.TraceOp;
+import org.huex.liarbarback.transport.ClientChannel;
+import org.huex.liarbarback.transport.ClientConnection;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.event.EventListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
-import jakarta.websocket.Session;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 @Component
 public class MsgHandler {
+    // 刷新时写入共享存储冲突后，重新作用本节点修改的次数上限
+    private static final int MAX_REAPPLY = 3;
+
     @Autowired RoomManager roomManager;
     @Autowired PlayerManager playerManager;
     @Autowired SessionManager sessionManager;
-    @Autowired private ApplicationEventPublisher eventPublisher;
-    
-    public boolean handleMsg(Message<?> message, Session session, String userId) {
+    @Autowired RoomUpdateBus roomUpdates;
+    @Autowired Reaper reaper;
+    @Autowired TurnTimer turnTimer;
+    @Autowired RoomSync roomSync;
+    @Autowired GameJournal journal;
+    @Autowired SpectatorFanout spectatorFanout;
+    @Autowired GameMetrics metrics;
+
+    @Value("${liarbar.inbound.mode:platform}") private String inboundMode;
+    @Value("${liarbar.inbound.threads:16}") private int inboundThreads;
+    @Value("${liarbar.inbound.queue-capacity:10000}") private int inboundQueueCapacity;
+    private Executor inbound;
+
+    @PostConstruct
+    public void subscribe() {
+        roomUpdates.subscribe(this::flushRoom);
+        inbound = InboundExecutors.create(inboundMode, inboundThreads, inboundQueueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (inbound instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 开始处理收到的消息所在的执行器，容器的读取线程只负责解码和排队
+     */
+    public Executor getInboundExecutor() {
+        return inbound;
+    }
+
+    /**
+     * 处理一条消息，完成时按消息类型和结果记录耗时
+     */
+    public CompletableFuture<Boolean> handleMsg(Message<?> message, ClientConnection connection) {
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> result = route(message, connection);
+        result.whenComplete((success, error) -> metrics.recordMessage(message.getMsgType(), start, success, error));
+        return result;
+    }
+
+    /**
+     * 把消息路由到目标房间的邮箱中处理，房间不存在时（创建房间或出错）直接在当前线程处理
+     */
+    private CompletableFuture<Boolean> route(Message<?> message, ClientConnection connection) {
+        if (message.getMsgType()==null || !message.getMsgType().accepts(message.getData())) {
+            System.err.println("Invalid data for message type: "+message.getMsgType());
+            sessionManager.send(connection.getChannel(), new Message<>(MsgType.INVALID_REQUEST, "Invalid data for message type: "+message.getMsgType()));
+            return CompletableFuture.completedFuture(false);
+        }
+        if (message.getMsgType()==MsgType.BATCH) {
+            return handleBatch(connection, (List<?>)message.getData());
+        }
+        Room room = findTargetRoom(message, connection);
+        if (room==null) {
+            return CompletableFuture.completedFuture(dispatch(message, connection, null));
+        }
+        return roomManager.submit(room, () -> {
+            if (room!=findTargetRoom(message, connection)) {
+                // 排队期间玩家所在房间发生了变化，重新路由
+                return route(message, connection);
+            }
+            long start = Trace.start();
+            room.touch();
+            boolean success = roomSync.execute(room, () -> dispatch(message, connection, room),
+                () -> sessionManager.send(connection.getChannel(), new Message<>(MsgType.ERROR, "Room is busy, please retry")));
+            Trace.record(room, TraceOp.of(message.getMsgType()), connection.getUserId(), start, success);
+            return CompletableFuture.completedFuture(success);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * 按顺序处理 BATCH 中的消息，每条消息和单独发送时一样路由到各自的房间邮箱。
+     * 期间修改的房间记在连接上，全部处理完后才标记为脏，每个房间只广播一次；请求的快照也推迟到最后，每个房间只发送一次。
+     * 各条消息的结果放在一条 BATCH_RESULT 中回复
+     */
+    private CompletableFuture<Boolean> handleBatch(ClientConnection connection, List<?> items) {
+        List<Boolean> results = new ArrayList<>(items.size());
+        connection.beginBatch();
+        CompletableFuture<Boolean> chain = CompletableFuture.completedFuture(true);
+        for (Object item : items) {
+            chain = chain
+                .thenComposeAsync(previous -> item instanceof Message<?> m && m.getMsgType()!=MsgType.BATCH
+                    ? handleMsg(m, connection)
+                    : CompletableFuture.completedFuture(false), inbound)
+                .exceptionally(error -> false)
+                .thenApply(success -> {
+                    results.add(success);
+                    return success;
+                });
+        }
+        return chain.thenApply(last -> {
+            ClientConnection.Batch batch = connection.endBatch();
+            // 先回复结果，广播和快照排在它之后
+            sessionManager.send(connection.getChannel(), new Message<>(MsgType.BATCH_RESULT, results));
+            for (Room room : batch.dirtyRooms()) {
+                roomUpdates.markDirty(room);
+            }
+            for (Room room : batch.snapshotRooms()) {
+                roomManager.submit(room, () -> {
+                    if (roomManager.getRoom(room.getId()).orElse(null)==room) {
+                        sendSnapshot(connection.getChannel(), connection.getUserId(), room);
+                    }
+                    return true;
+                });
+            }
+            return !results.contains(false);
+        });
+    }
+
+    private Room findTargetRoom(Message<?> message, ClientConnection connection) {
+        switch (message.getMsgType()) {
+            case CREATE_ROOM -> {
+                return null;
+            }
+            case JOIN_ROOM, GET_ROOM_PLAYERS, SPECTATE_ROOM -> {
+                return roomSync.findRoom((String)message.getData()).orElse(null);
+            }
+            default -> {
+                if (connection.isBound()) return connection.getRoom();
+                Player player=playerManager.getPlayer(connection.getUserId()).orElse(null);
+                if (player==null || player.getRoomId()==null) return null;
+                return roomManager.getRoom(player.getRoomId()).orElse(null);
+            }
+        }
+    }
+
+    private boolean dispatch(Message<?> message, ClientConnection connection, Room room) {
+        ClientChannel session = connection.getChannel();
+        String userId = connection.getUserId();
         try {
             switch (message.getMsgType()) {
                 case CREATE_ROOM -> {
-                    return handleCreateRoom(session, userId);
+                    return handleCreateRoom(connection);
                 }
                 case JOIN_ROOM -> {
-                    return handleJoinRoom(session, userId, message.getData().toString());
+                    return handleJoinRoom(connection, (String)message.getData());
                 }
                 case LEAVE_ROOM -> {
-                    return handleLeaveRoom(session, userId);
+                    return handleLeaveRoom(connection, room);
                 }
                 case CHANGE_NAME -> {
-                    return handleChangeName(session, userId, message.getData().toString());
+                    return handleChangeName(connection, room, (String)message.getData());
                 }
                 case GET_ROOM_PLAYERS -> {
-                    return sendRoomPlayers(session, message.getData().toString());
+                    return sendRoomPlayers(connection, (String)message.getData());
                 }
                 case PREPARE -> {
-                    return handlePrepare(session, userId, (boolean)message.getData());
+                    return handlePrepare(connection, room, (Boolean)message.getData());
                 }
                 case START_GAME -> {
-                    return handleStartGame(session, userId);
+                    return handleStartGame(connection, room);
                 }
                 case PLAY_CARDS,SKIP,CHALLENGE -> {
-                    return handlePerformOperation(session, userId, message.getMsgType(), (PlayCards)message.getData());
+                    return handlePerformOperation(connection, room, message.getMsgType(), (PlayCards)message.getData());
                 }
                 case RESTART -> {
-                    return handleRestartGame(session, userId);
+                    return handleRestartGame(connection, room);
+                }
+                case RESYNC -> {
+                    return handleResync(connection, room, (Long)message.getData());
+                }
+                case SPECTATE_ROOM -> {
+                    return handleSpectateRoom(session, userId, (String)message.getData());
                 }
                 default -> {
                     System.err.println("Unknown message type: "+message.getMsgType());
-                    session.getAsyncRemote().sendObject(new Message<>(MsgType.ERROR, "Unsupported message type: "+message.getMsgType()));
+                    reply(session, new Message<>(MsgType.ERROR, "Unsupported message type: "+message.getMsgType()));
                     return false;
                 }
             }
         } catch (Exception e) {
             System.err.println("Error handling message: " + e.getMessage());
             System.err.println(e.getStackTrace());
-            session.getAsyncRemote().sendObject(new Message<>(MsgType.ERROR, "Failed to handle message: "+e.getMessage()));
+            Trace.dump(room, "error handling " + message.getMsgType());
+            reply(session, new Message<>(MsgType.ERROR, "Failed to handle message: "+e.getMessage()));
             return false;
         }
     }
 
-    @EventListener
-    public void roomUpdatedListener(RoomUpdatedEvent event) {
-        Room room = roomManager.getRoom(event.getRoomId()).orElse(null);
-        if (room==null) return;
-        if (room.getPlayerList().isEmpty()) {
+    /**
+     * 房间更新总线刷新脏房间时在房间邮箱中调用：没人的房间删除，否则写入共享存储并广播变化，按新的回合重新计时
+     */
+    void flushRoom(Room room) {
+        if (room.getPlayerList().isEmpty() && roomSync.remove(room)) {
             roomManager.removeRoom(room.getId());
-            System.out.println("Room " + room.getId() + " removed due to no players.");
+            journal.append(room, JournalOp.REMOVE_ROOM, null);
+            spectatorFanout.close(room);
+            Trace.record(room, TraceOp.REMOVE_ROOM, null, Trace.start(), true);
+            turnTimer.update(room);
             return;
         }
+        deactivateDisconnected(room);
+        for (int attempt = 0; !roomSync.replicate(room) && attempt < MAX_REAPPLY; attempt++) {
+            // 本地修改被存储中的状态覆盖：重新标记本节点上断线的玩家、重新执行超时的自动出牌，再写入一次
+            deactivateDisconnected(room);
+            turnTimer.resume(room);
+        }
         broadcastRoom(room);
+        turnTimer.update(room);
     }
 
-    public void broadcastRoom(Room room) {
-        System.out.println("Start broadcasting room");
-        System.out.println(room);
+    /**
+     * 在本节点上却没有连接的玩家（例如从快照恢复后还没有重连）和断线一样标记为不活跃，记录日志并开始计时清理
+     */
+    private void deactivateDisconnected(Room room) {
         for (Player p : room.getPlayerList()) {
+            if (!p.isActive() || p.getChannel()!=null) continue;
+            // 从其他节点加入的玩家连接在其他节点上
+            if (playerManager.getPlayer(p.getUserId()).orElse(null)!=p) continue;
+            p.setActive(false);
+            room.markUpdated();
+            journal.append(room, JournalOp.DEACTIVATE, p.getUserId());
+            reaper.watchPlayer(room, p);
+        }
+    }
+
+    /**
+     * 把房间的变化推送给房间里的玩家和观众，返回是否给玩家发送了完整快照
+     */
+    public boolean broadcastRoom(Room room) {
+        long start = System.nanoTime();
+        RoomState state = new RoomState(room);
+        RoomState base = room.getBroadcastState();
+        RoomDelta delta = base==null ? null : RoomDelta.between(room.getId(), base, state);
+        if (delta!=null && delta.getVersion()==delta.getBaseVersion()) {
+            return false;
+        }
+        room.setBroadcastState(state);
+        // 结构变化发送完整快照，否则发送增量
+        RoomFrame frame = delta==null ? RoomFrame.of(room) : null;
+        EncodedMessage publicDelta = delta==null ? null : new EncodedMessage(new Message<>(MsgType.ROOM_DELTA, delta));
+        List<Player> players = room.getPlayerList();
+        int recipients = 0;
+        for (int i=0;i<players.size();i++) {
+            Player p = players.get(i);
             if (p.isActive()) {
-                Session session = sessionManager.getSession(p.getUserId()).orElse(null);
+                ClientChannel session = p.getChannel();
                 if (session==null) {
-                    p.setActive(false);
+                    // 连接在其他节点上，由那个节点推送；本节点上没有连接的玩家在刷新时已经标记为不活跃
                     continue;
                 }
-                Message<Room> message = new Message<>(Message.MsgType.ROOM_PLAYERS_LIST, room);
-                session.getAsyncRemote().sendObject(message);
-                System.out.println("Sent msg to player "+p.getName()+" MsgID:"+message.getMsgId());
+                if (delta==null) {
+                    sessionManager.sendRoom(session, frame, p.getUserId());
+                } else if (delta.hasCardChanges(i)) {
+                    sessionManager.send(session, new Message<>(MsgType.ROOM_DELTA, delta.withOwnCards(i, p)));
+                } else {
+                    sessionManager.send(session, publicDelta);
+                }
+                recipients++;
             }
         }
-        System.out.println("End broadcasting room");
+        metrics.recordBroadcast(delta==null, recipients, start);
+        Trace.record(room, TraceOp.BROADCAST, null, start, true);
+        // 观众的帧只在这里编码一次，发送在扇出线程中进行
+        spectatorFanout.publish(room);
+        return delta==null;
+    }
+
+    /**
+     * 给单个会话发送完整快照。先把未广播的变化广播出去，保证快照版本和之后增量的 baseVersion 衔接；
+     * 广播已经给这个会话发了完整快照时不再重复发送
+     */
+    public void sendSnapshot(ClientChannel session, String userId, Room room) {
+        if (room.getBroadcastState()==null || room.getBroadcastState().getVersion()!=room.getVersion()) {
+            if (broadcastRoom(room) && receivesBroadcast(room, session)) return;
+        }
+        sessionManager.sendRoom(session, RoomFrame.of(room), userId);
+    }
+
+    /**
+     * 连接在批处理中时把快照推迟到批处理结束，否则立即发送
+     */
+    private void sendSnapshot(ClientConnection connection, Room room) {
+        roomSync.afterSave(() -> {
+            if (!connection.deferSnapshot(room)) {
+                sendSnapshot(connection.getChannel(), connection.getUserId(), room);
+            }
+        });
+    }
+
+    private static boolean receivesBroadcast(Room room, ClientChannel session) {
+        for (Player p : room.getPlayerList()) {
+            if (p.isActive() && p.getChannel()==session) return true;
+        }
+        return false;
     }
 
 
     public boolean checkPlayerInRoom(Player player, Room room) {
+        if (room==null) {
+            roomSync.afterSave(() -> playerManager.removePlayer(player.getUserId()));
+            return false;
+        }
         if (player.getRoomId()==null
             || !player.getRoomId().equals(room.getId())
             || !room.getPlayerList().contains(player)
         ) {
-            room.removePlayer(player.getUserId());
-            playerManager.removePlayer(player.getUserId());
+            if (room.removePlayer(player.getUserId())) {
+                journal.append(room, JournalOp.LEAVE_ROOM, player.getUserId());
+            }
+            roomSync.afterSave(() -> playerManager.removePlayer(player.getUserId()));
             return false;
         }
         return true;
     }
 
 
-    public boolean handleCreateRoom(Session session, String userId) {
+    /**
+     * 连接所属的、在 room 中的玩家，找不到时回复错误并返回 null。连接上缓存的玩家有效时直接使用，否则查找后缓存
+     */
+    private Player findPlayerInRoom(ClientConnection connection, Room room) {
+        if (connection.isBound() && connection.getRoom()==room) return connection.getPlayer();
+        String userId = connection.getUserId();
+        Player player=playerManager.getPlayer(userId).orElse(null);
+        if (player==null) {
+            System.err.println("Player " + userId + " not found");
+            reply(connection.getChannel(), new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
+            return null;
+        }
+        if (!checkPlayerInRoom(player, room)) {
+            System.err.println("Player " + userId + " not in a room");
+            reply(connection.getChannel(), new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found in room"));
+            return null;
+        }
+        roomSync.afterSave(() -> connection.bind(player, room));
+        return player;
+    }
+
+    /**
+     * 标记房间需要广播，连接在批处理中时等批处理结束再标记
+     */
+    private void markDirty(ClientConnection connection, Room room) {
+        roomSync.afterSave(() -> {
+            if (!connection.defer(room)) {
+                roomUpdates.markDirty(room);
+            }
+        });
+    }
+
+    /**
+     * 回复发起消息的连接。处理中的消息可能因为共享存储的版本冲突重新执行，回复等修改写入存储后才发送，见 RoomSync.afterSave
+     */
+    private void reply(ClientChannel session, Message<?> message) {
+        roomSync.afterSave(() -> sessionManager.send(session, message));
+    }
+
+    public boolean handleCreateRoom(ClientConnection connection) {
+        ClientChannel session = connection.getChannel();
+        String userId = connection.getUserId();
         if (playerManager.getPlayer(userId).isPresent()) {
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ALREADY_IN_ROOM, "Already in a room"));
+            reply(session, new Message<>(Message.MsgType.ALREADY_IN_ROOM, "Already in a room"));
             System.err.println("Player " + userId + " already in a room");
             return false;
         }
         try {
+            spectatorFanout.unwatch(session);
+            long start = Trace.start();
             Room room = roomManager.createRoom(userId);
-            System.out.println("Room " + room.getId() + " created by user: " + userId);
-            broadcastRoom(room);
+            roomManager.submit(room, () -> {
+                connection.bind(room.getPlayerList().get(0), room);
+                journal.append(room, JournalOp.CREATE_ROOM, userId);
+                Trace.record(room, TraceOp.CREATE_ROOM, userId, start, true);
+                return true;
+            });
+            markDirty(connection, room);
+            reaper.watchRoom(room);
             return true;
         } catch (Exception e) {
             System.err.println("Error creating room: " + e.getMessage());
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Failed to create room"));
+            reply(session, new Message<>(Message.MsgType.ERROR, "Failed to create room"));
             e.printStackTrace();
             return false;
         }
     }
 
-    public boolean handleJoinRoom(Session session, String userId, String roomId) {
+    public boolean handleJoinRoom(ClientConnection connection, String roomId) {
+        ClientChannel session = connection.getChannel();
+        String userId = connection.getUserId();
         try { 
             Room room = roomManager.getRoom(roomId).orElse(null);
             if (room == null) {
-                session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
+                reply(session, new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
                 System.err.println("Room " + roomId + " not found");
                 return false;
             }
+            Player existing = room.getPlayer(userId);
+            if (existing != null && playerManager.getPlayer(userId).orElse(existing) == existing) {
+                // 断线重连：包括从快照恢复的玩家和之前从其他节点加入房间的玩家
+                roomSync.afterSave(() -> {
+                    playerManager.addPlayer(existing);
+                    connection.bind(existing, room);
+                });
+                if (!existing.isActive()) {
+                    existing.setActive(true);
+                    room.markUpdated();
+                    journal.append(room, JournalOp.ACTIVATE, userId);
+                    markDirty(connection, room);
+                }
+                sendSnapshot(connection, room);
+                return true;
+            }
             if (room.isFull()) {
                 System.err.println("Room " + roomId + " is full");
-                session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Room is full"));
+                reply(session, new Message<>(Message.MsgType.ERROR, "Room is full"));
                 return false;   
             }
             if (room.isStarted()) {
                 System.err.println("Game already started in room " + roomId);
-                session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.GAME_ALREADY_STARTED, "Game already started"));
+                reply(session, new Message<>(Message.MsgType.GAME_ALREADY_STARTED, "Game already started"));
                 return false;
             }
             if (!playerManager.getPlayer(userId).isPresent()) {
                 Player player=new Player(userId);
                 player.setRoomId(roomId);
                 room.addPlayer(player);
-                playerManager.addPlayer(player);
+                roomSync.afterSave(() -> {
+                    spectatorFanout.unwatch(session);
+                    playerManager.addPlayer(player);
+                    connection.bind(player, room);
+                });
+                journal.append(room, JournalOp.JOIN_ROOM, userId);
+                markDirty(connection, room);
+            } else {
+                sendSnapshot(connection, room);
             }
-            broadcastRoom(room);
             return true;
         } catch (Exception e) {
             System.err.println("Error joining room: " + e.getMessage());
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Failed to join room"));
+            reply(session, new Message<>(Message.MsgType.ERROR, "Failed to join room"));
             return false;
         }
     }
 
-    public boolean handleLeaveRoom(Session session, String userId) {
-        Player player=playerManager.getPlayer(userId).orElse(null);
+    public boolean handleLeaveRoom(ClientConnection connection, Room room) {
+        ClientChannel session = connection.getChannel();
+        String userId = connection.getUserId();
+        Player player=connection.isBound() ? connection.getPlayer() : playerManager.getPlayer(userId).orElse(null);
+        if (player==null && spectatorFanout.unwatch(session)) {
+            reply(session, new Message<>(Message.MsgType.ROOM_LEFT, "Stopped spectating"));
+            return true;
+        }
         if (player==null) {
             System.err.println("Player " + userId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
+            reply(session, new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
             return false;
         }
-        Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
         if (room==null) {
             System.err.println("Player " + userId + " not in a room");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
+            reply(session, new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
             return false;
         }
         if (room.isStarted()) {
             player.setActive(false);
+            room.markUpdated();
+            journal.append(room, JournalOp.DEACTIVATE, userId);
+            roomSync.afterSave(() -> reaper.watchPlayer(room, player));
         } else {
             room.removePlayer(userId);
-            playerManager.removePlayer(userId);
+            roomSync.afterSave(() -> playerManager.removePlayer(userId));
+            journal.append(room, JournalOp.LEAVE_ROOM, userId);
         }
-        session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ROOM_LEFT, "Left room"));
-        if (room.getPlayerList().isEmpty()) {
-            eventPublisher.publishEvent(new RoomUpdatedEvent(this, player.getRoomId()));
-        } else {
-            broadcastRoom(room);
-        }
-        System.out.println("Player " + userId + " left room "+room.getId());
+        roomSync.afterSave(connection::unbind);
+        reply(session, new Message<>(Message.MsgType.ROOM_LEFT, "Left room"));
+        markDirty(connection, room);
         return true;
     }
 
-    public boolean handleChangeName(Session session, String userId, String name) {      
-        Player player=playerManager.getPlayer(userId).orElse(null);
-        if (player==null) {
-            System.err.println("Player " + userId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
-            return false;
-        }
-        Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
-        if (!checkPlayerInRoom(player, room)) {
-            System.err.println("Player " + userId + " not in a room");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found in room"));
-            return false;
-        }
+    public boolean handleChangeName(ClientConnection connection, Room room, String name) {
+        Player player = findPlayerInRoom(connection, room);
+        if (player==null) return false;
         player.setName(name);
-        System.out.println("Player " + userId + " changed name to " + name);
-        broadcastRoom(room);
+        room.markUpdated();
+        journal.append(room, JournalOp.CHANGE_NAME, connection.getUserId(), name);
+        markDirty(connection, room);
         return true;
     }
 
-    public boolean sendRoomPlayers(Session session, String roomId) {
+    public boolean sendRoomPlayers(ClientConnection connection, String roomId) {
+        ClientChannel session = connection.getChannel();
         Room room=roomManager.getRoom(roomId).orElse(null);
         if (room==null) {
             System.err.println("Room " + roomId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
+            reply(session, new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
             return false;
         }
-        session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ROOM_PLAYERS_LIST, room));
+        sendSnapshot(connection, room);
         return true;
     }
 
-    public boolean handlePrepare(Session session, String userId, boolean isReady) {
-        Player player=playerManager.getPlayer(userId).orElse(null);
-        if (player==null) {
-            System.err.println("Player " + userId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
+    public boolean handleSpectateRoom(ClientChannel session, String userId, String roomId) {
+        Room room=roomManager.getRoom(roomId).orElse(null);
+        if (room==null) {
+            System.err.println("Room " + roomId + " not found");
+            reply(session, new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room not found"));
             return false;
         }
-        player.setReady(isReady);
-        Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
-        if (!checkPlayerInRoom(player, room)) {
-            System.err.println("Player " + userId + " not in a room");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found in room"));
+        if (playerManager.getPlayer(userId).isPresent()) {
+            System.err.println("Player " + userId + " cannot spectate while in a room");
+            reply(session, new Message<>(Message.MsgType.ALREADY_IN_ROOM, "Already in a room"));
+            return false;
+        }
+        if (!spectatorFanout.watch(room, session)) {
+            System.err.println("Room " + roomId + " has too many spectators");
+            reply(session, new Message<>(Message.MsgType.ERROR, "Too many spectators"));
             return false;
         }
-        System.out.println("Player " + userId + (isReady?" ready":" not ready"));
-        broadcastRoom(room);
         return true;
     }
 
-    public boolean handleStartGame(Session session, String userId) {
-        Player player=playerManager.getPlayer(userId).orElse(null);
-        if (player==null) {
-            System.err.println("Player " + userId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
-            return false;
-        }
-        Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
-        if (!checkPlayerInRoom(player, room)) {
-            System.err.println("Player " + userId + " not in a room");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found in room"));
-            return false;
+    public boolean handleResync(ClientConnection connection, Room room, long knownVersion) {
+        Player player = findPlayerInRoom(connection, room);
+        if (player==null) return false;
+        if (knownVersion!=room.getVersion()) {
+            sendSnapshot(connection, room);
         }
+        return true;
+    }
+
+    public boolean handlePrepare(ClientConnection connection, Room room, boolean isReady) {
+        String userId = connection.getUserId();
+        Player player = findPlayerInRoom(connection, room);
+        if (player==null) return false;
+        player.setReady(isReady);
+        room.markUpdated();
+        journal.append(room, JournalOp.PREPARE, userId, 0, isReady ? 1 : 0);
+        markDirty(connection, room);
+        return true;
+    }
+
+    public boolean handleStartGame(ClientConnection connection, Room room) {
+        ClientChannel session = connection.getChannel();
+        String userId = connection.getUserId();
+        Player player = findPlayerInRoom(connection, room);
+        if (player==null) return false;
         if (!player.isHost()) {
             System.err.println("Player " + userId + " is not the host");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "You are not the host"));
+            reply(session, new Message<>(Message.MsgType.ERROR, "You are not the host"));
             return false;
         }
         if (!room.isStarted() && room.getPlayerList().stream().allMatch(Player::isReady)) {
             if (room.startGame()) {
-                broadcastRoom(room);
-                System.out.println("Game started: "+room);
+                journal.append(room, JournalOp.START_GAME, userId, room.getSeed(), 0);
+                markDirty(connection, room);
                 return true;
             }
             return false;
         } else {
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Game cannot be started"));
+            reply(session, new Message<>(Message.MsgType.ERROR, "Game cannot be started"));
             return false;
         }
     }
 
-    public boolean handleRestartGame(Session session, String userId) {
-        Player player=playerManager.getPlayer(userId).orElse(null);
-        if (player==null) {
-            System.err.println("Player " + userId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
-            return false;
-        }
-        Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
-        if (!checkPlayerInRoom(player, room)) {
-            System.err.println("Player " + userId + " not in a room");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found in room"));
-            return false;
-        }
+    public boolean handleRestartGame(ClientConnection connection, Room room) {
+        String userId = connection.getUserId();
+        Player player = findPlayerInRoom(connection, room);
+        if (player==null) return false;
         // if (!player.isHost()) {
         //     System.err.println("Player " + userId + " is not the host");
-        //     session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "You are not the host"));
+        //     reply(session, new Message<>(Message.MsgType.ERROR, "You are not the host"));
         //     return false;
         // }
         room.restartGame();
-        broadcastRoom(room);
+        journal.append(room, JournalOp.RESTART, userId);
+        markDirty(connection, room);
         return true;
     }
 
-    public boolean handlePerformOperation(Session session, String userId, MsgType msgType, PlayCards playCards) {
-        Player player=playerManager.getPlayer(userId).orElse(null);
-        if (player==null) {
-            System.err.println("Player " + userId + " not found");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found"));
-            return false;
-        }
-        Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
-        if (!checkPlayerInRoom(player, room)) {
-            System.err.println("Player " + userId + " not in a room");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.PLAYER_NOT_FOUND, "Player not found in room"));
-            return false;
-        }
+    public boolean handlePerformOperation(ClientConnection connection, Room room, MsgType msgType, PlayCards playCards) {
+        ClientChannel session = connection.getChannel();
+        String userId = connection.getUserId();
+        Player player = findPlayerInRoom(connection, room);
+        if (player==null) return false;
         if (!room.isStarted()) {
             System.err.println("Game not started in room " + room.getId());
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Game not started"));
+            reply(session, new Message<>(Message.MsgType.ERROR, "Game not started"));
             return false;
         }
         ///////////////////////////////////////////////////////////
 
+        // 失败的出牌也可能改变房间（新一轮的声明点数），和成功的操作一样记录
         boolean success;
         switch (msgType) {
             case PLAY_CARDS -> {
                 success=room.playCards(playCards, userId);
+                journal.append(room, JournalOp.PLAY_CARDS, userId,
+                    playCards.getCards()==null ? JournalReplay.NO_CARDS : Card.maskOf(playCards.getCards()),
+                    playCards.getClaimRank()==null ? JournalReplay.NO_RANK : playCards.getClaimRank().ordinal());
             }
             case SKIP -> {
                 success=room.skip(userId);
+                journal.append(room, JournalOp.SKIP, userId);
             }
             case CHALLENGE -> {
                 success=room.challenge(userId);
+                journal.append(room, JournalOp.CHALLENGE, userId);
             }
             default -> {
                 System.err.println("Unsupported operation: " + msgType);
-                session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Unsupported operation"));
+                reply(session, new Message<>(Message.MsgType.ERROR, "Unsupported operation"));
                 return false;
             }
         }
 
         ///////////////////////////////////////////////////////////
-        broadcastRoom(room);
+        markDirty(connection, room);
         if (!success) {
             System.err.println("Player " + player.getName() + " failed to play cards");
-            session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.ERROR, "Failed to play cards"));
+            reply(session, new Message<>(Message.MsgType.ERROR, "Failed to play cards"));
             return false;
         }
         return true;
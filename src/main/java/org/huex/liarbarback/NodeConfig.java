@@ -0,0 +1,33 @@
+package org.huex.liarbarback;
+
+import org.huex.liarbarback.models.MsgIds;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 本节点的编号，消息 id（MsgIds）和房间同步（RoomSync）都用它区分节点。
+ * 多个节点共享 Redis 时必须给每个节点配置不同的 liarbar.node.id，否则启动失败；单机部署未配置时随机选取
+ */
+@Configuration
+public class NodeConfig {
+    @Value("${liarbar.node.id:-1}") private long nodeId;
+    @Value("${liarbar.store.type:memory}") private String storeType;
+
+    @PostConstruct
+    public void configure() {
+        if (nodeId >= 0) {
+            MsgIds.setNode(nodeId);
+            return;
+        }
+        if (storeType.equals("redis")) {
+            throw new IllegalStateException("liarbar.node.id must be set to a unique value on every node when liarbar.store.type is redis");
+        }
+        System.out.println("liarbar.node.id is not set, using random node id " + MsgIds.getNode());
+    }
+
+    public long getNodeId() {
+        return MsgIds.getNode();
+    }
+}
@@ -0,0 +1,187 @@
+package org.huex.liarbarback;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.huex.liarbarback.transport.ClientChannel;
+
+/**
+ * 每个连接的发送队列：同一时刻只有一条消息在发送，上一条的发送回调里再发下一条，
+ * 避免对同一连接并发发送（JSR-356 会抛出 IllegalStateException），也让未发出的消息留在这里可以被丢弃和计量。
+ *
+ * 同一房间的新快照入队时，还没发出的旧快照和旧增量都已过时，直接丢弃。
+ * 队列超过消息数或字节数上限时新的房间快照和增量被丢弃（客户端之后会因为版本不连续而重新同步）；
+ * 错误、ROOM_LEFT、BATCH_RESULT 等一次性回复丢了就无法恢复，超限时照常入队。
+ * 持续超限超过 overflowNanos 时 offer 返回 OVERFLOW，由调用方断开连接。
+ */
+public class OutboundQueue {
+    private static final String KEY = OutboundQueue.class.getName();
+
+    public enum Result {
+        QUEUED,
+        DROPPED, // 超过上限，房间快照或增量被丢弃
+        OVERFLOW, // 持续超过上限，队列已关闭
+        CLOSED
+    }
+
+    /**
+     * 所有连接共享的计数，由 GameMetrics 导出
+     */
+    public static class Counters {
+        public final LongAdder coalesced = new LongAdder(); // 被同一房间的新快照取代而丢弃的消息
+        public final LongAdder dropped = new LongAdder(); // 超过上限被丢弃的房间快照和增量
+        public final LongAdder overflowed = new LongAdder(); // 因持续超限被断开的连接
+    }
+
+    private static class Frame {
+        final Object payload; // String 或 ByteBuffer
+        final int size;
+        final String roomId; // 房间快照和增量所属的房间，其他消息为 null
+        final boolean snapshot;
+
+        Frame(Object payload, int size, String roomId, boolean snapshot) {
+            this.payload = payload;
+            this.size = size;
+            this.roomId = roomId;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final ClientChannel session;
+    private final String userId;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final long overflowNanos;
+    private final Counters counters;
+
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private Frame inFlight;
+    private long bytes; // 排队中和发送中的字节数
+    private long overBudgetSince; // 0 表示没有超限
+    private boolean closed;
+
+    private OutboundQueue(ClientChannel session, String userId, int maxMessages, long maxBytes, long overflowNanos,
+            Counters counters) {
+        this.session = session;
+        this.userId = userId;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.overflowNanos = overflowNanos;
+        this.counters = counters;
+    }
+
+    /**
+     * 为会话创建发送队列并保存在会话中
+     */
+    public static OutboundQueue attach(ClientChannel session, String userId, int maxMessages, long maxBytes, long overflowNanos,
+            Counters counters) {
+        OutboundQueue queue = new OutboundQueue(session, userId, maxMessages, maxBytes, overflowNanos, counters);
+        session.getAttributes().put(KEY, queue);
+        return queue;
+    }
+
+    public static OutboundQueue of(ClientChannel session) {
+        return session.getAttributes().get(KEY) instanceof OutboundQueue queue ? queue : null;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Result offerText(String text, String roomId, boolean snapshot) {
+        return offer(new Frame(text, text.length(), roomId, snapshot));
+    }
+
+    public Result offerBinary(ByteBuffer bytes, String roomId, boolean snapshot) {
+        return offer(new Frame(bytes, bytes.remaining(), roomId, snapshot));
+    }
+
+    private Result offer(Frame frame) {
+        synchronized (this) {
+            if (closed) return Result.CLOSED;
+            if (frame.snapshot) {
+                int before = queue.size();
+                queue.removeIf(queued -> {
+                    if (!frame.roomId.equals(queued.roomId)) return false;
+                    bytes -= queued.size;
+                    return true;
+                });
+                counters.coalesced.add(before - queue.size());
+            }
+            if (size() >= maxMessages || bytes + frame.size > maxBytes) {
+                long now = System.nanoTime();
+                if (overBudgetSince == 0) {
+                    overBudgetSince = now;
+                } else if (now - overBudgetSince > overflowNanos) {
+                    close();
+                    counters.overflowed.increment();
+                    return Result.OVERFLOW;
+                }
+                if (frame.roomId != null) {
+                    counters.dropped.increment();
+                    return Result.DROPPED;
+                }
+            } else {
+                overBudgetSince = 0;
+            }
+            queue.add(frame);
+            bytes += frame.size;
+        }
+        sendNext();
+        return Result.QUEUED;
+    }
+
+    private void sendNext() {
+        Frame next;
+        synchronized (this) {
+            if (inFlight != null || closed) return;
+            next = queue.poll();
+            if (next == null) return;
+            inFlight = next;
+        }
+        try {
+            if (next.payload instanceof String text) {
+                session.sendText(text, this::onResult);
+            } else {
+                session.sendBinary((ByteBuffer) next.payload, this::onResult);
+            }
+        } catch (RuntimeException e) {
+            onResult(e);
+        }
+    }
+
+    /**
+     * 上一条消息发送完成，error 为 null 表示成功。回调可能在发送线程上同步执行
+     */
+    private void onResult(Throwable error) {
+        synchronized (this) {
+            if (inFlight != null) {
+                bytes -= inFlight.size;
+                inFlight = null;
+            }
+            if (error != null) {
+                // 连接已经不可用，关闭事件会负责清理玩家
+                System.err.println("Error sending message to user " + userId + ": " + error.getMessage());
+                close();
+                return;
+            }
+        }
+        sendNext();
+    }
+
+    private void close() {
+        closed = true;
+        queue.clear();
+        bytes = inFlight == null ? 0 : inFlight.size;
+    }
+
+    public synchronized int size() {
+        return queue.size() + (inFlight == null ? 0 : 1);
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+}
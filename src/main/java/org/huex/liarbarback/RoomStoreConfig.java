@@ -0,0 +1,28 @@
+package org.huex.liarbarback;
+
+import org.huex.liarbarback.store.MemoryRoomStore;
+import org.huex.liarbarback.store.RedisRoomStore;
+import org.huex.liarbarback.store.RoomStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+@Configuration
+public class RoomStoreConfig {
+
+    /**
+     * 房间存储，由 liarbar.store.type 选择：memory 为单机，redis 为多节点共享
+     */
+    @Bean
+    public RoomStore roomStore(@Value("${liarbar.store.type:memory}") String type,
+                               @Value("${liarbar.store.ttl-ms:7200000}") long ttlMillis,
+                               ObjectProvider<RedisConnectionFactory> redis) {
+        return switch (type) {
+            case "memory" -> new MemoryRoomStore();
+            case "redis" -> new RedisRoomStore(redis.getObject(), ttlMillis);
+            default -> throw new IllegalArgumentException("Unknown liarbar.store.type: " + type);
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package org.huex.liarbarback;
+
+import java.util.concurrent.TimeUnit;
+
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TimerConfig {
+
+    /**
+     * 所有超时共用的时间轮
+     */
+    @Bean(destroyMethod = "stop")
+    public TimingWheel timingWheel(@Value("${liarbar.timer.tick-ms:100}") long tickMillis,
+                                   @Value("${liarbar.timer.wheel-size:512}") int wheelSize) {
+        return new TimingWheel("timing-wheel", tickMillis, TimeUnit.MILLISECONDS, wheelSize);
+    }
+}
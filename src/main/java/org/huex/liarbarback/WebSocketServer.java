@@ -1,25 +1,22 @@
 package org.huex.liarbarback;
 
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
-import org.huex.liarbarback.managers.SessionManager;
 import org.huex.liarbarback.models.Message;
+import org.huex.liarbarback.models.MessageBinaryDecoder;
+import org.huex.liarbarback.models.MessageDecoder;
 import org.huex.liarbarback.models.MessageEncoder;
-import org.huex.liarbarback.models.PlayCards;
 import org.huex.liarbarback.models.PlayCardsEncoder;
+import org.huex.liarbarback.transport.ClientConnection;
+import org.huex.liarbarback.transport.ClientConnections;
+import org.huex.liarbarback.transport.JsrClientChannel;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
-import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.WebSocketSession;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import jakarta.websocket.DecodeException;
 import jakarta.websocket.OnClose;
 import jakarta.websocket.OnError;
 import jakarta.websocket.OnMessage;
@@ -31,75 +28,57 @@ import jakarta.websocket.server.ServerEndpoint;
 @ServerEndpoint(
     value = "/api/ws/{user_id}",
     configurator = SpringEndpointConfigurator.class, // 使用自定义配置器
-    encoders = {MessageEncoder.class, PlayCardsEncoder.class} // 注册编码器
+    encoders = {MessageEncoder.class, PlayCardsEncoder.class}, // 注册编码器
+    decoders = {MessageDecoder.class}, // 注册解码器
+    subprotocols = {WireFormat.BINARY_SUBPROTOCOL, WireFormat.JSON_SUBPROTOCOL} // 客户端可选择二进制格式
 )
 @Component
 @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE) // 设置为原型作用域
 public class WebSocketServer {
-    private String userId;
-
+    private static final MessageBinaryDecoder binaryDecoder = new MessageBinaryDecoder();
+    // 连接的处理和响应式传输共用，这里只把 JSR-356 的事件转交给它
+    private ClientConnection connection;
 
-    private SessionManager sessionManager;
-    private MsgHandler msgHandler;
-    @Autowired
-    public void setSessionManager(SessionManager sessionManager) {
-        this.sessionManager = sessionManager;
-    }
 
+    private ClientConnections connections;
     @Autowired
-    public void setMsgHandler(MsgHandler msgHandler) {
-        this.msgHandler = msgHandler;
+    public void setClientConnections(ClientConnections connections) {
+        this.connections = connections;
     }
 
 
     @OnOpen
     public void onOpen(Session session, @PathParam("user_id") String userId) {
-        this.userId = userId;
-        sessionManager.addSession(userId, session);
-        System.out.println("WebSocket connection opened for user: " + userId);
-        session.getAsyncRemote().sendObject(new Message<>(Message.MsgType.WELCOME, "Welcome to the WebSocket server!"));
+        connection = connections.open(new JsrClientChannel(session, userId), "jsr356");
     }
 
     @OnClose
-    public void onClose(Session session, @PathParam("user_id") String userId) {
-        sessionManager.removeSession(userId);
-        System.out.println("WebSocket connection closed for user: " + userId);
+    public void onClose(Session session) {
+        connection.closed();
     }
 
     @OnMessage
-    public void onMessage(String message, Session session) {
-        // System.out.println("Received message from user: " + userId + " message: " + message);
-        // session.getAsyncRemote().sendText("Hello from server");
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
+    public void onMessage(Message<?> message, Session session) {
+        connection.receive(message);
+    }
+
+    @OnMessage
+    public void onBinaryMessage(ByteBuffer bytes, Session session) {
         try {
-            Message<?> receivedMessage = mapper.readValue(message, Message.class);
-            boolean success=false;
-            if (receivedMessage.getMsgType().equals(Message.MsgType.PLAY_CARDS)) {
-                System.out.println("Received PLAY_CARDS message: " + receivedMessage.getData());
-                TypeReference<Message<PlayCards>> typeRef = new TypeReference<>() {};
-                Message<PlayCards> receivedMessagePlayCards = mapper.readValue(message, typeRef);
-                success=msgHandler.handleMsg(receivedMessagePlayCards, session, userId);
-            }
-            else {
-                System.out.println("Received normal message: " + receivedMessage.getMsgType());
-                success=msgHandler.handleMsg(receivedMessage, session, userId);
-            }
-            System.out.println("Message handled: " + receivedMessage + (success?" success":" failed"));
-        } catch (Exception e) {
-            System.err.println("Error parsing message: " + e.getMessage());
-            session.getAsyncRemote().sendText("Error parsing message: " + e.getMessage());
+            onMessage(binaryDecoder.decode(bytes), session);
+        } catch (DecodeException e) {
+            onError(session, e);
         }
-        
     }
 
     @OnError
     public void onError(Session session, Throwable error) {
-        System.err.println("WebSocket error: " + error.getMessage());
-        try {
-            sessionManager.removeSession(userId);
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (connection == null) {
+            System.err.println("WebSocket error before open: " + error.getMessage());
+        } else if (error instanceof DecodeException) {
+            connection.decodeFailed(error);
+        } else {
+            connection.failed(error);
         }
     }
 }
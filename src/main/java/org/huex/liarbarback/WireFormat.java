@@ -0,0 +1,29 @@
+package org.huex.liarbarback;
+
+import org.huex.liarbarback.transport.ClientChannel;
+
+/**
+ * 每个连接使用的消息格式，通过 WebSocket 子协议协商，未协商时默认 JSON
+ */
+public enum WireFormat {
+    JSON,
+    BINARY;
+
+    public static final String JSON_SUBPROTOCOL = "liarbar.json";
+    public static final String BINARY_SUBPROTOCOL = "liarbar.binary";
+
+    private static final String KEY = WireFormat.class.getName();
+
+    /**
+     * 根据协商结果确定格式并保存在会话中
+     */
+    public static WireFormat negotiate(ClientChannel session) {
+        WireFormat format = BINARY_SUBPROTOCOL.equals(session.getSubprotocol()) ? BINARY : JSON;
+        session.getAttributes().put(KEY, format);
+        return format;
+    }
+
+    public static WireFormat of(ClientChannel session) {
+        return session.getAttributes().get(KEY) instanceof WireFormat format ? format : JSON;
+    }
+}
@@ -0,0 +1,70 @@
+package org.huex.liarbarback.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 处理收到的消息所用的执行器，由 liarbar.inbound.mode 选择：
+ * <ul>
+ *   <li>direct：在容器读取消息的线程上直接处理</li>
+ *   <li>platform：有界的平台线程池，队列满时由提交任务的线程自己处理。同一连接的下一条消息在上一条完成的线程上提交，
+ *   通常是房间邮箱或时间轮线程，所以这并不会让读取线程暂停；每个连接堆积的消息数由 ClientConnection 按
+ *   liarbar.inbound.max-pending 限制</li>
+ *   <li>virtual：每条消息一个虚拟线程，需要在 Java 21 上运行（可以用 -Pjava21 构建），更早的版本退回 platform</li>
+ * </ul>
+ */
+public final class InboundExecutors {
+    private InboundExecutors() {
+    }
+
+    public static Executor create(String mode, int threads, int queueCapacity) {
+        return switch (mode) {
+            case "direct" -> Runnable::run;
+            case "platform" -> platform(threads, queueCapacity);
+            case "virtual" -> {
+                ExecutorService virtual = virtual();
+                if (virtual != null) yield virtual;
+                System.err.println("Virtual threads need Java 21, running " + Runtime.version()
+                    + "; falling back to liarbar.inbound.mode=platform");
+                yield platform(threads, queueCapacity);
+            }
+            default -> throw new IllegalArgumentException("Unknown liarbar.inbound.mode: " + mode);
+        };
+    }
+
+    private static ExecutorService platform(int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+                Thread thread = new Thread(r, "inbound-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 通过反射创建，Java 17 也能编译；运行时没有虚拟线程时返回 null
+     */
+    private static ExecutorService virtual() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "inbound-virtual-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
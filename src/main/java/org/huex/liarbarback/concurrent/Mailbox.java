@@ -0,0 +1,77 @@
+package org.huex.liarbarback.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 串行邮箱：提交的任务按提交顺序在共享线程池上执行，同一时刻最多只有一个线程在执行，
+ * 因此被邮箱保护的状态不需要加锁。每次最多连续执行 BATCH 个任务后让出线程，避免饿死其他邮箱。
+ */
+public class Mailbox implements Executor {
+    private static final int BATCH = 64;
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public Mailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 在调用线程上直接执行的邮箱，任务中再次提交的任务排队到当前任务结束后执行
+     */
+    public static Mailbox inline() {
+        return new Mailbox(Runnable::run);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(command.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        for (int i = 0; i < BATCH && (task = tasks.poll()) != null; i++) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                System.err.println("Mailbox task failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        scheduled.set(false);
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.huex.liarbarback.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮：定时任务按到期的 tick 放进环形数组的桶里，超过一圈的记下剩余圈数。
+ * 调度和取消都是 O(1)：调用方线程只把任务或取消请求放进无锁队列，由时间轮线程在每个 tick 开始时搬进桶里或从桶里摘掉；
+ * 时间轮线程每个 tick 只遍历当前这一个桶。精度是一个 tick，到期任务在时间轮线程上执行，必须很快返回
+ * （需要访问房间状态时提交到房间邮箱）。
+ */
+public class TimingWheel {
+    private static final int INIT = 0, CANCELLED = 1, EXPIRED = 2;
+
+    /**
+     * 已调度的任务，可以取消
+     */
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadline; // 相对时间轮启动时间的纳秒数
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private long remainingRounds;
+        // 所在桶的双向链表，只由时间轮线程访问
+        private Timeout prev;
+        private Timeout next;
+        private Bucket bucket;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务，任务已经执行或已经取消时返回 false
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) return false;
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    if (timeout.state.compareAndSet(INIT, EXPIRED)) {
+                        try {
+                            timeout.task.run();
+                        } catch (Throwable e) {
+                            System.err.println("Error running timer task: " + e.getMessage());
+                        }
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick; // 只由时间轮线程访问
+
+    /**
+     * @param tickDuration 每个 tick 的时长，也是定时精度
+     * @param wheelSize 桶数，向上取整到 2 的幂；tickDuration * wheelSize 以内的任务不需要计圈
+     */
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        tickNanos = unit.toNanos(tickDuration);
+        if (tickNanos <= 0) throw new IllegalArgumentException("tickDuration must be positive");
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        mask = size - 1;
+        startTime = System.nanoTime();
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 在 delay 之后执行任务。时间轮已停止时任务不会执行
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 还没有搬进桶里的任务数，用于监控
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep;
+            while ((sleep = deadline - (System.nanoTime() - startTime)) > 0 && running) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            if (!running) break;
+            removeCancelled();
+            transferPending();
+            buckets[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        // 每个 tick 最多搬 100000 个，避免调度风暴时这一 tick 无法结束
+        for (int i = 0; i < 100000; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) return;
+            if (timeout.state.get() == CANCELLED) continue;
+            long expireTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expireTick - tick) / buckets.length;
+            // 已经过期的任务放进当前桶，这一 tick 执行
+            buckets[(int) (Math.max(expireTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.huex.liarbarback.events;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.models.Room;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 房间更新总线：修改房间后只把房间标记为脏，每个 tick 把脏房间各刷新一次（在房间邮箱中调用订阅者），
+ * 同一个 tick 内对同一房间的多次更新合并成一次广播。大量连接同时断开时，每个房间也只广播一次。
+ * 刷新在定时线程和房间线程池上执行，不占用 WebSocket 的 I/O 线程。
+ */
+@Component
+public class RoomUpdateBus {
+    @Autowired private RoomManager roomManager;
+    @Value("${liarbar.room-updates.tick-ms:10}") private long tickMillis = 10;
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private volatile Consumer<Room> subscriber = room -> {};
+    private ScheduledExecutorService ticker;
+
+    // 标记次数和实际刷新次数，两者之差是被合并掉的更新
+    private final LongAdder marked = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "room-updates");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::flush, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) ticker.shutdown();
+    }
+
+    /**
+     * 设置刷新时调用的订阅者，在房间邮箱中执行
+     */
+    public void subscribe(Consumer<Room> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * 标记房间需要广播，下一个 tick 统一刷新
+     */
+    public void markDirty(Room room) {
+        markDirty(room.getId());
+    }
+
+    public void markDirty(String roomId) {
+        if (roomId == null) return;
+        marked.increment();
+        dirty.add(roomId);
+    }
+
+    /**
+     * 把当前所有脏房间提交到各自的邮箱中刷新
+     */
+    public void flush() {
+        for (String roomId : dirty) {
+            if (!dirty.remove(roomId)) continue;
+            Room room = roomManager.getRoom(roomId).orElse(null);
+            if (room == null) continue;
+            flushed.increment();
+            roomManager.submit(room, () -> {
+                subscriber.accept(room);
+                return true;
+            }).exceptionally(e -> {
+                System.err.println("Error flushing room " + roomId + ": " + e.getMessage());
+                return false;
+            });
+        }
+    }
+
+    public long getMarkedCount() {
+        return marked.sum();
+    }
+
+    public long getFlushedCount() {
+        return flushed.sum();
+    }
+}
@@ -0,0 +1,310 @@
+package org.huex.liarbarback.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.huex.liarbarback.models.Room;
+
+/**
+ * 只追加的操作日志。房间邮箱中每接受一次修改调用 append，记录放入队列后立即返回；
+ * 单独的写线程把队列中积攒的记录成批写入当前分段，每批 force 一次（组提交）。
+ *
+ * 分段文件名为 journal-{序号}.log，写满 segmentRecords 条后换下一个分段，每次启动也从新的分段开始，
+ * 崩溃时最多丢掉最后一个分段末尾没写完的记录。快照写入后，快照开始前已经写完的分段可以删除（保留最近 retainSegments 个）。
+ *
+ * 同一个房间的记录都在它的邮箱中追加，按 seq 顺序出现在日志中；不同房间之间的顺序不保证。
+ * 共享存储时 RoomSync.execute 可能因为版本冲突重新执行消息，每次尝试的记录先缓存，写入存储成功后才分配 seq 进入队列
+ */
+public class GameJournal implements AutoCloseable {
+    private static final int MAX_BATCH = 512;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final boolean fsync;
+    private final int retainSegments;
+
+    private final AtomicLong lastSeq = new AtomicLong();
+    private final BlockingQueue<JournalRecord> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // begin 之后还没有 commit 的记录，没有 begin 时为 null
+    private final ThreadLocal<List<Pending>> pending = new ThreadLocal<>();
+
+    private record Pending(Room room, long timeMillis, JournalOp op, String userId, long arg, int aux, String text) {
+    }
+
+    // 只在写线程中访问
+    private FileChannel segment;
+    private int segmentCount;
+    private volatile long segmentIndex;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private GameJournal() {
+        dir = null;
+        segmentRecords = 0;
+        fsync = false;
+        retainSegments = 0;
+        queue = null;
+        writer = null;
+    }
+
+    /**
+     * 不记录任何操作
+     */
+    public static GameJournal disabled() {
+        return new GameJournal();
+    }
+
+    public GameJournal(Path dir, int segmentRecords, boolean fsync, int retainSegments, int capacity) throws IOException {
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.fsync = fsync;
+        this.retainSegments = retainSegments;
+        queue = new ArrayBlockingQueue<>(capacity);
+        Files.createDirectories(dir);
+        List<Path> segments = segments(dir);
+        segmentIndex = segments.isEmpty() ? 0 : indexOf(segments.get(segments.size() - 1));
+        // 不同房间的记录可能跨分段交错，从最后两个分段中找最大的 seq
+        for (Path path : segments.subList(Math.max(0, segments.size() - 2), segments.size())) {
+            read(path, record -> lastSeq.accumulateAndGet(record.seq(), Math::max));
+        }
+        writer = new Thread(this::run, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * 记录一次修改，必须在房间邮箱中调用。队列满时阻塞，日志不会丢记录；当前线程在 begin 之后时先缓存，见 commit
+     */
+    public void append(Room room, JournalOp op, String userId, long arg, int aux) {
+        append(room, op, userId, arg, aux, null);
+    }
+
+    /**
+     * 带文本的记录（例如 CHANGE_NAME 的新名字），文本太长时截断，见 JournalRecord
+     */
+    public void append(Room room, JournalOp op, String userId, String text) {
+        append(room, op, userId, 0, 0, text);
+    }
+
+    private void append(Room room, JournalOp op, String userId, long arg, int aux, String text) {
+        if (writer == null) return;
+        Pending record = new Pending(room, System.currentTimeMillis(), op, userId, arg, aux, text);
+        List<Pending> buffered = pending.get();
+        if (buffered != null) {
+            buffered.add(record);
+        } else {
+            put(record);
+        }
+    }
+
+    /**
+     * 开始缓存当前线程追加的记录。RoomSync.execute 的每次尝试之前调用，存储写入成功后 commit，冲突时 discard
+     */
+    public void begin() {
+        if (writer == null) return;
+        pending.set(new ArrayList<>());
+    }
+
+    /**
+     * 按追加的顺序写入缓存的记录，这时才分配 seq
+     */
+    public void commit() {
+        List<Pending> buffered = pending.get();
+        pending.remove();
+        if (buffered == null) return;
+        for (Pending record : buffered) {
+            put(record);
+        }
+    }
+
+    /**
+     * 丢弃缓存的记录，这次尝试的修改没有生效。已经 commit 时什么也不做
+     */
+    public void discard() {
+        pending.remove();
+    }
+
+    private void put(Pending pending) {
+        JournalRecord record = new JournalRecord(lastSeq.incrementAndGet(), pending.timeMillis(),
+            pending.op(), pending.room().getId(), pending.userId(), pending.arg(), pending.aux(), pending.text());
+        pending.room().setJournalSeq(record.seq());
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void append(Room room, JournalOp op, String userId) {
+        append(room, op, userId, 0, 0);
+    }
+
+    private void run() {
+        List<JournalRecord> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH * JournalRecord.BYTES);
+        while (running || !queue.isEmpty()) {
+            try {
+                JournalRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                write(batch, buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                System.err.println("Error writing journal, " + batch.size() + " records lost: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<JournalRecord> batch, ByteBuffer buffer) throws IOException {
+        int written = 0;
+        while (written < batch.size()) {
+            if (segment == null || segmentCount == segmentRecords) {
+                roll();
+            }
+            int count = Math.min(batch.size() - written, segmentRecords - segmentCount);
+            buffer.clear();
+            for (int i = 0; i < count; i++) {
+                batch.get(written + i).writeTo(buffer);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segmentCount += count;
+            written += count;
+        }
+        if (fsync) {
+            segment.force(false);
+        }
+        records.add(batch.size());
+        batches.increment();
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        segmentIndex++;
+        segment = FileChannel.open(dir.resolve(String.format("%s%08d%s", PREFIX, segmentIndex, SUFFIX)),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentCount = 0;
+    }
+
+    /**
+     * 当前正在写的分段序号，在快照开始前读取，传给 truncate
+     */
+    public long currentSegment() {
+        return segmentIndex;
+    }
+
+    /**
+     * 快照写入后调用：删除 segment 之前的分段，这些分段中的记录都已经包含在快照里
+     */
+    public void truncate(long segment) throws IOException {
+        if (writer == null) return;
+        List<Path> segments = segments(dir);
+        for (int i = 0; i < segments.size() - retainSegments; i++) {
+            if (indexOf(segments.get(i)) >= segment) break;
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * 按分段顺序读取所有记录
+     */
+    public void replay(Consumer<JournalRecord> consumer) throws IOException {
+        if (writer == null) return;
+        for (Path path : segments(dir)) {
+            read(path, consumer);
+        }
+    }
+
+    /**
+     * 读取一个分段，遇到校验失败的记录（崩溃时没写完）时停止
+     */
+    static void read(Path path, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= JournalRecord.BYTES) {
+                JournalRecord record = JournalRecord.readFrom(buffer);
+                if (record == null) {
+                    System.err.println("Journal " + path + " ends with a torn record at offset " + buffer.position());
+                    return;
+                }
+                consumer.accept(record);
+            }
+        }
+    }
+
+    static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 写完队列中剩余的记录后关闭
+     */
+    @Override
+    public void close() {
+        if (writer == null) return;
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+
+    public long getRecordCount() {
+        return records.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+}
@@ -0,0 +1,25 @@
+package org.huex.liarbarback.journal;
+
+// 操作日志记录的操作类型，序号写入文件，只能在末尾追加
+public enum JournalOp {
+    CREATE_ROOM,  // userId 为房主
+    JOIN_ROOM,
+    LEAVE_ROOM,   // 玩家移出房间
+    DEACTIVATE,   // 玩家断线，座位保留
+    ACTIVATE,     // 玩家重连
+    PREPARE,      // aux 为 1 表示准备
+    START_GAME,   // arg 为洗牌种子
+    PLAY_CARDS,   // arg 为打出的牌的位掩码，aux 为声明点数的序号
+    SKIP,
+    CHALLENGE,
+    AUTO_PLAY,
+    RESTART,
+    REMOVE_ROOM,
+    CHANGE_NAME;  // text 为新名字
+
+    private static final JournalOp[] VALUES = values();
+
+    public static JournalOp ofOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
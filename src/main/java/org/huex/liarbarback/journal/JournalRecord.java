@@ -0,0 +1,97 @@
+package org.huex.liarbarback.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * 一条定长 128 字节的操作日志：
+ * <pre>
+ *   0  seq        long
+ *   8  时间戳      long，毫秒
+ *  16  op         byte，JournalOp 序号
+ *  17  aux        byte
+ *  18  房间号      6 字节 ASCII
+ *  24  arg        long
+ *  32  userId 长度 byte
+ *  33  userId     UTF-8，最多 91 字节，更长的截断
+ *      text 长度   byte，紧跟在 userId 之后
+ *      text       UTF-8，和 userId、长度字节合计最多 91 字节，更长的在字符边界截断；没有时长度为 0
+ * 124  CRC32C     int，覆盖前 124 字节
+ * </pre>
+ */
+public record JournalRecord(long seq, long timeMillis, JournalOp op, String roomId, String userId, long arg, int aux,
+        String text) {
+    public static final int BYTES = 128;
+    private static final int ROOM_ID_BYTES = 6;
+    private static final int USER_ID_BYTES = 91;
+    private static final int CRC_OFFSET = 124;
+
+    public void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(seq).putLong(timeMillis).put((byte) op.ordinal()).put((byte) aux);
+        byte[] room = roomId.getBytes(StandardCharsets.US_ASCII);
+        buffer.put(room, 0, Math.min(room.length, ROOM_ID_BYTES));
+        for (int i = room.length; i < ROOM_ID_BYTES; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.putLong(arg);
+        byte[] user = userId == null ? new byte[0] : userId.getBytes(StandardCharsets.UTF_8);
+        int userLength = Math.min(user.length, USER_ID_BYTES);
+        buffer.put((byte) userLength).put(user, 0, userLength);
+        if (userLength < USER_ID_BYTES) {
+            byte[] extra = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+            int textLength = prefixLength(extra, USER_ID_BYTES - userLength - 1);
+            buffer.put((byte) textLength).put(extra, 0, textLength);
+        }
+        while (buffer.position() < start + CRC_OFFSET) {
+            buffer.put((byte) 0);
+        }
+        buffer.putInt((int) crc(buffer, start));
+    }
+
+    /**
+     * 从 buffer 的当前位置读一条记录，校验失败（写到一半或全零）时返回 null
+     */
+    public static JournalRecord readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.getInt(start + CRC_OFFSET) != (int) crc(buffer, start)) {
+            return null;
+        }
+        long seq = buffer.getLong();
+        long timeMillis = buffer.getLong();
+        JournalOp op = JournalOp.ofOrdinal(buffer.get());
+        int aux = buffer.get() & 0xFF;
+        byte[] room = new byte[ROOM_ID_BYTES];
+        buffer.get(room);
+        int roomLength = 0;
+        while (roomLength < ROOM_ID_BYTES && room[roomLength] != 0) roomLength++;
+        long arg = buffer.getLong();
+        byte[] user = new byte[Math.min(buffer.get() & 0xFF, USER_ID_BYTES)];
+        buffer.get(user);
+        String text = null;
+        if (user.length < USER_ID_BYTES) {
+            byte[] extra = new byte[Math.min(buffer.get() & 0xFF, USER_ID_BYTES - user.length - 1)];
+            buffer.get(extra);
+            if (extra.length > 0) text = new String(extra, StandardCharsets.UTF_8);
+        }
+        buffer.position(start + BYTES);
+        if (op == null || seq <= 0) return null;
+        return new JournalRecord(seq, timeMillis, op, new String(room, 0, roomLength, StandardCharsets.US_ASCII),
+            new String(user, StandardCharsets.UTF_8), arg, aux, text);
+    }
+
+    // 最多 max 字节、不切断 UTF-8 字符的前缀长度
+    private static int prefixLength(byte[] utf8, int max) {
+        if (utf8.length <= max) return utf8.length;
+        int length = max;
+        while (length > 0 && (utf8[length] & 0xC0) == 0x80) length--;
+        return length;
+    }
+
+    private static long crc(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start, CRC_OFFSET));
+        return crc.getValue();
+    }
+}
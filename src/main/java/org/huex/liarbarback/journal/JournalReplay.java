@@ -0,0 +1,87 @@
+package org.huex.liarbarback.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.huex.liarbarback.models.Card;
+import org.huex.liarbarback.models.PlayCards;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+
+/**
+ * 把操作日志重新作用到 Room 上。开局记录了洗牌种子，其余操作都是确定的，按顺序重放得到和原来一样的房间
+ * （超过日志记录长度的玩家名字除外，见 JournalRecord）
+ */
+public final class JournalReplay {
+    // PLAY_CARDS 中客户端没有给出牌或点数时记录的值
+    public static final long NO_CARDS = -1L;
+    public static final int NO_RANK = 0xFF;
+
+    private JournalReplay() {
+    }
+
+    /**
+     * 重放目录中的全部日志，用于事后查看有争议的对局
+     */
+    public static Map<String, Room> replay(Path dir) throws IOException {
+        Map<String, Room> rooms = new LinkedHashMap<>();
+        for (Path segment : GameJournal.segments(dir)) {
+            GameJournal.read(segment, record -> apply(rooms, record));
+        }
+        return rooms;
+    }
+
+    public static void apply(Map<String, Room> rooms, JournalRecord record) {
+        String userId = record.userId();
+        if (record.op() == JournalOp.CREATE_ROOM) {
+            Room room = new Room(record.roomId());
+            Player host = new Player(userId);
+            host.setHost(true);
+            host.setRoomId(room.getId());
+            room.addPlayer(host);
+            room.setJournalSeq(record.seq());
+            rooms.put(room.getId(), room);
+            return;
+        }
+        Room room = rooms.get(record.roomId());
+        if (room == null) return;
+        room.setJournalSeq(record.seq());
+        Player player = room.getPlayer(userId);
+        switch (record.op()) {
+            case JOIN_ROOM -> {
+                Player joined = new Player(userId);
+                joined.setRoomId(room.getId());
+                room.addPlayer(joined);
+            }
+            case LEAVE_ROOM -> room.removePlayer(userId);
+            case DEACTIVATE, ACTIVATE -> {
+                if (player == null) return;
+                player.setActive(record.op() == JournalOp.ACTIVATE);
+                room.markUpdated();
+            }
+            case CHANGE_NAME -> {
+                if (player == null) return;
+                player.setName(record.text() == null ? "" : record.text());
+                room.markUpdated();
+            }
+            case PREPARE -> {
+                if (player == null) return;
+                player.setReady(record.aux() != 0);
+                room.markUpdated();
+            }
+            case START_GAME -> room.startGame(record.arg());
+            case PLAY_CARDS -> room.playCards(new PlayCards(
+                record.arg() == NO_CARDS ? null : Card.listOf(record.arg()),
+                record.aux() == NO_RANK ? null : Card.Rank.values()[record.aux()]), userId);
+            case SKIP -> room.skip(userId);
+            case CHALLENGE -> room.challenge(userId);
+            case AUTO_PLAY -> room.autoPlay(userId);
+            case RESTART -> room.restartGame();
+            case REMOVE_ROOM -> rooms.remove(room.getId());
+            default -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.huex.liarbarback.managers;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.journal.JournalOp;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.trace.Trace;
+import org.huex.liarbarback.trace.TraceOp;
+import org.huex.liarbarback.transport.ClientChannel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 在时间轮上清理长时间没有活动的房间、断线的玩家和空闲的连接，防止它们一直留在内存里。
+ *
+ * 每个对象只挂一个定时任务，活动时只更新时间戳；任务到期时检查空闲时长，没到期就按剩余时间重新调度。
+ * 房间和玩家的检查提交到房间邮箱中执行。
+ */
+@Component
+public class Reaper {
+    private static final String SESSION_KEY = Reaper.class.getName();
+
+    @Autowired private RoomManager roomManager;
+    @Autowired private PlayerManager playerManager;
+    @Autowired private RoomUpdateBus roomUpdates;
+    @Autowired private TimingWheel timingWheel;
+    @Autowired private GameJournal journal;
+
+    @Value("${liarbar.reaper.room-idle-ms:1800000}") private long roomIdleMillis;
+    @Value("${liarbar.reaper.abandoned-ms:120000}") private long abandonedMillis;
+    @Value("${liarbar.reaper.player-idle-ms:600000}") private long playerIdleMillis;
+    @Value("${liarbar.reaper.session-idle-ms:1800000}") private long sessionIdleMillis;
+
+    private final LongAdder reapedRooms = new LongAdder();
+    private final LongAdder reapedPlayers = new LongAdder();
+    private final LongAdder reapedSessions = new LongAdder();
+    // 关闭握手可能阻塞，不能在时间轮线程上执行，也不占用 inbound 共用的线程池
+    private final ExecutorService closer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "reaper-close");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 连接的最近活动时间，保存在会话属性中
+    private static final class SessionLease {
+        volatile long lastActivity = System.nanoTime();
+        volatile TimingWheel.Timeout timeout;
+    }
+
+    /**
+     * 开始跟踪房间：room-idle-ms 内没有玩家消息，或所有玩家都断线超过 abandoned-ms 时删除房间和其中的玩家
+     */
+    public void watchRoom(Room room) {
+        scheduleRoom(room, TimeUnit.MILLISECONDS.toNanos(Math.min(roomIdleMillis, abandonedMillis)));
+    }
+
+    private void scheduleRoom(Room room, long delayNanos) {
+        timingWheel.schedule(() -> roomManager.submit(room, () -> checkRoom(room)), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean checkRoom(Room room) {
+        if (roomManager.getRoom(room.getId()).orElse(null) != room) return false;
+        if (room.getPlayerList().isEmpty()) {
+            // 已经清空，等刷新删除；删除时和其他节点冲突、房间恢复后继续计时
+            scheduleRoom(room, TimeUnit.MILLISECONDS.toNanos(abandonedMillis));
+            return false;
+        }
+        long idle = System.nanoTime() - room.getLastActivity();
+        boolean abandoned = room.getPlayerList().stream().noneMatch(Player::isActive);
+        long limit = TimeUnit.MILLISECONDS.toNanos(abandoned ? abandonedMillis : roomIdleMillis);
+        if (idle < limit) {
+            // 还有人在线时，玩家可能随时全部断开，最迟 abandoned-ms 后再查一次
+            scheduleRoom(room, Math.min(limit - idle, TimeUnit.MILLISECONDS.toNanos(abandonedMillis)));
+            return false;
+        }
+        // 清空房间后交给刷新删除，和玩家都离开时走同一条路径（共享存储、操作日志、回合计时、观众）
+        for (Player player : List.copyOf(room.getPlayerList())) {
+            room.removePlayer(player.getUserId());
+            removePlayer(player);
+        }
+        roomUpdates.markDirty(room);
+        reapedRooms.increment();
+        scheduleRoom(room, TimeUnit.MILLISECONDS.toNanos(abandonedMillis));
+        return true;
+    }
+
+    /**
+     * 玩家断线后开始计时，player-idle-ms 后仍未重连、且房间不在对局中时把玩家移出房间。
+     * 对局中的座位要保留给自动出牌，等对局结束后再检查。必须在房间邮箱中调用
+     */
+    public void watchPlayer(Room room, Player player) {
+        if (player.getIdleTimeout() != null) {
+            player.getIdleTimeout().cancel();
+        }
+        player.setIdleTimeout(timingWheel.schedule(
+            () -> roomManager.submit(room, () -> checkPlayer(room, player)),
+            playerIdleMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private boolean checkPlayer(Room room, Player player) {
+        player.setIdleTimeout(null);
+        if (player.isActive() || room.getPlayer(player.getUserId()) != player) return false;
+        if (room.isStarted() && !room.isEnded()) {
+            watchPlayer(room, player);
+            return false;
+        }
+        long start = Trace.start();
+        room.removePlayer(player.getUserId());
+        journal.append(room, JournalOp.LEAVE_ROOM, player.getUserId());
+        removePlayer(player);
+        Trace.record(room, TraceOp.REMOVE_PLAYER, player.getUserId(), start, true);
+        roomUpdates.markDirty(room);
+        return true;
+    }
+
+    private void removePlayer(Player player) {
+        if (player.getIdleTimeout() != null) {
+            player.getIdleTimeout().cancel();
+            player.setIdleTimeout(null);
+        }
+        // 同一用户可能已经在别的房间创建了新的玩家对象
+        if (playerManager.getPlayer(player.getUserId()).orElse(null) == player) {
+            playerManager.removePlayer(player.getUserId());
+        }
+        reapedPlayers.increment();
+    }
+
+    /**
+     * 开始跟踪连接，session-idle-ms 内没有收到消息时关闭连接，之后按正常断线处理
+     */
+    public void watchSession(ClientChannel session) {
+        SessionLease lease = new SessionLease();
+        session.getAttributes().put(SESSION_KEY, lease);
+        scheduleSession(session, lease, TimeUnit.MILLISECONDS.toNanos(sessionIdleMillis));
+    }
+
+    public void touchSession(ClientChannel session) {
+        if (session.getAttributes().get(SESSION_KEY) instanceof SessionLease lease) {
+            lease.lastActivity = System.nanoTime();
+        }
+    }
+
+    /**
+     * 连接关闭时取消定时任务
+     */
+    public void unwatchSession(ClientChannel session) {
+        if (session.getAttributes().get(SESSION_KEY) instanceof SessionLease lease && lease.timeout != null) {
+            lease.timeout.cancel();
+        }
+    }
+
+    private void scheduleSession(ClientChannel session, SessionLease lease, long delayNanos) {
+        lease.timeout = timingWheel.schedule(() -> checkSession(session, lease), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void checkSession(ClientChannel session, SessionLease lease) {
+        if (!session.isOpen()) return;
+        long idle = System.nanoTime() - lease.lastActivity;
+        long limit = TimeUnit.MILLISECONDS.toNanos(sessionIdleMillis);
+        if (idle < limit) {
+            scheduleSession(session, lease, limit - idle);
+            return;
+        }
+        reapedSessions.increment();
+        closer.execute(() -> session.close(ClientChannel.GOING_AWAY, "Idle timeout"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closer.shutdown();
+    }
+
+    public long getReapedRooms() {
+        return reapedRooms.sum();
+    }
+
+    public long getReapedPlayers() {
+        return reapedPlayers.sum();
+    }
+
+    public long getReapedSessions() {
+        return reapedSessions.sum();
+    }
+}
@@ -0,0 +1,104 @@
+package org.huex.liarbarback.managers;
+
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 6 位 36 进制房间号分配器。
+ *
+ * 新房间号由递增计数器经过带密钥的 Feistel 置换得到：置换是双射，所以在计数器用完整个空间（36^6 约 21.8 亿）之前
+ * 不会重复，也不需要查表重试；相邻计数器的结果看起来是随机的。Feistel 作用在 2^32 上，结果超出 36^6 时
+ * 继续置换（cycle walking），平均约两次。
+ *
+ * 释放的房间号在冷却时间后优先复用，避免旧房间号在客户端缓存或分享链接里还没失效时就指向新房间。
+ * 分配和释放都只有 CAS，不加锁。
+ */
+public class RoomCodeAllocator {
+    public static final int LENGTH = 6;
+    public static final long SPACE = 2176782336L; // 36^6
+
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final int ROUNDS = 4;
+
+    private record Freed(String code, long reusableAt) {
+    }
+
+    private final int[] keys = new int[ROUNDS];
+    private final AtomicLong counter = new AtomicLong();
+    // 按释放顺序排列，队首最早可以复用
+    private final Queue<Freed> freed = new ConcurrentLinkedQueue<>();
+
+    public RoomCodeAllocator() {
+        this(new SecureRandom().nextLong());
+    }
+
+    public RoomCodeAllocator(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < ROUNDS; i++) {
+            keys[i] = random.nextInt();
+        }
+    }
+
+    /**
+     * 分配一个房间号。inUse 用于跳过仍被占用的号码：计数器绕回一圈之后，或者有房间不是通过这里创建的（例如从快照恢复）
+     */
+    public String allocate(Predicate<String> inUse) {
+        long now = System.nanoTime();
+        Freed head;
+        while ((head = freed.peek()) != null && head.reusableAt - now <= 0) {
+            // 别的线程可能已经取走了同一个队首
+            if (freed.remove(head) && !inUse.test(head.code)) {
+                return head.code;
+            }
+        }
+        while (true) {
+            String code = format(permute(Math.floorMod(counter.getAndIncrement(), SPACE)));
+            if (!inUse.test(code)) {
+                return code;
+            }
+        }
+    }
+
+    /**
+     * 房间删除后归还房间号，cooldownNanos 之后才会再次分配
+     */
+    public void release(String code, long cooldownNanos) {
+        freed.add(new Freed(code, System.nanoTime() + cooldownNanos));
+    }
+
+    /**
+     * [0, SPACE) 上的置换
+     */
+    long permute(long index) {
+        int x = (int) index;
+        do {
+            x = feistel(x);
+        } while (Integer.toUnsignedLong(x) >= SPACE);
+        return Integer.toUnsignedLong(x);
+    }
+
+    private int feistel(int x) {
+        int left = x >>> 16;
+        int right = x & 0xFFFF;
+        for (int key : keys) {
+            int mixed = (right ^ key) * 0x9E3779B1;
+            int next = left ^ ((mixed ^ mixed >>> 15) & 0xFFFF);
+            left = right;
+            right = next;
+        }
+        return left << 16 | right;
+    }
+
+    static String format(long value) {
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = DIGITS[(int) (value % 36)];
+            value /= 36;
+        }
+        return new String(chars);
+    }
+}
@@ -1,66 +1,112 @@
 package org.huex.liarbarback.managers;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+import org.huex.liarbarback.concurrent.Mailbox;
 import org.huex.liarbarback.models.Player;
 import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.store.MemoryRoomStore;
+import org.huex.liarbarback.store.RoomStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+
 @Component
 public class RoomManager {
     @Autowired private PlayerManager playerManager;
+    // 共享存储中其他节点创建的房间号也不能再分配
+    @Autowired private RoomStore roomStore = new MemoryRoomStore();
     private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final RoomCodeAllocator roomCodes = new RoomCodeAllocator();
+    // 删除的房间号经过这段时间后才会复用
+    @Value("${liarbar.room-code.cooldown-ms:600000}") private long roomCodeCooldownMillis = 600000;
+
+    // 所有房间邮箱共用的线程池
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService roomExecutor = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(),
+        r -> {
+            Thread thread = new Thread(r, "room-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
     public Room createRoom(String userId) {
         String roomId = generateRoomId();
         Room room = new Room(roomId);
+        room.setMailbox(new Mailbox(roomExecutor));
         Player player=new Player(userId);
         player.setHost(true);
         player.setRoomId(roomId);
         playerManager.addPlayer(player);
         room.addPlayer(player);
         rooms.put(roomId, room);
-        System.out.println("Room created with ID: " + roomId + " by user: " + userId);
         return room;
     }
 
+    /**
+     * 登记从共享存储读出的房间。其他线程已经登记了同一房间时返回已有的房间
+     */
+    public Room addRoom(Room room) {
+        room.setMailbox(new Mailbox(roomExecutor));
+        Room existing = rooms.putIfAbsent(room.getId(), room);
+        return existing != null ? existing : room;
+    }
+
+    /**
+     * 在房间的邮箱中执行命令，房间状态只能在这里修改
+     */
+    public <T> CompletableFuture<T> submit(Room room, Supplier<T> command) {
+        return room.getMailbox().submit(command);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        roomExecutor.shutdown();
+    }
+
     public Optional<Room> getRoom(String roomId) {
         return Optional.ofNullable(rooms.get(roomId));
     }
 
+    public Collection<Room> getRooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * 正在进行的对局数，在邮箱外读取开局标志，只用于监控
+     */
+    public long getStartedGameCount() {
+        return rooms.values().stream().filter(Room::isStarted).count();
+    }
+
 
     public String generateRoomId() {
-        StringBuilder roomId;
-        do {
-            String uuid = UUID.randomUUID().toString().replace("-", "").toUpperCase();
-            // 只取前6位，并确保只包含字母和数字
-            roomId = new StringBuilder();
-            String allowedChars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-            
-            for (int i = 0; i < 6; i++) {
-                char c = uuid.charAt(i);
-                if (allowedChars.indexOf(c) >= 0) {
-                    roomId.append(c);
-                } else {
-                    // 如果不是允许的字符，随机选择一个
-                    roomId.append(allowedChars.charAt((int)(Math.random() * allowedChars.length())));
-                }
-            }
-        } while (rooms.containsKey(roomId.toString()));
-        return roomId.toString();
+        return roomCodes.allocate(roomId -> rooms.containsKey(roomId)
+            || roomStore.isShared() && roomStore.contains(roomId));
     }
 
     public boolean removeRoom(String roomId) {
-        if (rooms.containsKey(roomId)) {
-            rooms.remove(roomId);
-            System.out.println("Room with ID: " + roomId + " has been removed.");
+        if (rooms.remove(roomId) != null) {
+            roomCodes.release(roomId, TimeUnit.MILLISECONDS.toNanos(roomCodeCooldownMillis));
             return true;
         } else {
-            System.out.println("Room with ID: " + roomId + " does not exist.");
             return false;
         }
     }
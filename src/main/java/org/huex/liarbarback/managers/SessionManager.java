@@ -1,85 +1,154 @@
 package org.huex.liarbarback.managers;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.huex.liarbarback.MsgHandler;
 
-import jakarta.websocket.Session;
-
+import org.huex.liarbarback.OutboundQueue;
 import org.huex.liarbarback.WebSocketServer;
-import org.huex.liarbarback.events.RoomUpdatedEvent;
+import org.huex.liarbarback.WireFormat;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.journal.JournalOp;
+import org.huex.liarbarback.models.EncodedMessage;
+import org.huex.liarbarback.models.Message;
 import org.huex.liarbarback.models.Player;
 import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.models.RoomDelta;
+import org.huex.liarbarback.models.RoomFrame;
+import org.huex.liarbarback.spectators.SharedFrame;
+import org.huex.liarbarback.store.RoomSync;
+import org.huex.liarbarback.trace.Trace;
+import org.huex.liarbarback.trace.TraceOp;
+import org.huex.liarbarback.transport.ClientChannel;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+
 @Component
 public class SessionManager {
     @Autowired private PlayerManager playerManager;
     @Autowired private RoomManager roomManager;
-    @Autowired private ApplicationEventPublisher eventPublisher;
+    @Autowired private RoomUpdateBus roomUpdates;
+    @Autowired private Reaper reaper;
+    @Autowired private RoomSync roomSync;
+    @Autowired private GameJournal journal;
+
+    // 每个连接发送队列的上限，持续超限的连接被断开
+    @Value("${liarbar.outbound.max-messages:256}") private int maxOutboundMessages = 256;
+    @Value("${liarbar.outbound.max-bytes:1048576}") private long maxOutboundBytes = 1 << 20;
+    @Value("${liarbar.outbound.overflow-ms:5000}") private long outboundOverflowMillis = 5000;
 
     // 使用线程安全的Map存储所有连接
-    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, ClientChannel> sessions = new ConcurrentHashMap<>();
+    private final OutboundQueue.Counters outboundCounters = new OutboundQueue.Counters();
+    // 关闭握手可能阻塞，断开慢客户端在专用线程上进行，不占用房间邮箱和 inbound 共用的线程池
+    private final ExecutorService closer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "session-close");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     /**
      * 添加连接
      */
-    public void addSession(String userId, Session session) {
+    public void addSession(String userId, ClientChannel session) {
+        attachQueue(session, userId);
         sessions.put(userId, session);
-        System.out.println("User " + userId + " connected. Total connections: " + sessions.size());
+        // 同一用户的新连接取代旧连接接收房间的广播
+        Player player = playerManager.getPlayer(userId).orElse(null);
+        if (player != null && player.getChannel() != null) {
+            player.setChannel(session);
+        }
+    }
+
+    private OutboundQueue attachQueue(ClientChannel session, String userId) {
+        return OutboundQueue.attach(session, userId, maxOutboundMessages, maxOutboundBytes,
+            TimeUnit.MILLISECONDS.toNanos(outboundOverflowMillis), outboundCounters);
+    }
+
+    /**
+     * 连接已关闭时返回 null，已关闭的会话不能再访问属性
+     */
+    private OutboundQueue queue(ClientChannel session) {
+        if (!session.isOpen()) return null;
+        OutboundQueue queue = OutboundQueue.of(session);
+        return queue != null ? queue : attachQueue(session, session.getUserId());
     }
     
     /**
-     * 移除连接
+     * 移除连接，玩家和房间的处理在房间邮箱中执行
      */
-    public boolean removeSession(String userId) {
+    public boolean removeSession(String userId, ClientChannel session) {
+        // 用户已经用新的会话重连时，旧会话的关闭不影响玩家
+        if (!sessions.remove(userId, session)) return false;
         Player player=playerManager.getPlayer(userId).orElse(null);
         if(player==null) return false;
+        if (player.getChannel()==session) {
+            player.setChannel(null);
+        }
         Room room=roomManager.getRoom(player.getRoomId()).orElse(null);
 
-        if (room!=null) {
+        if (room==null) {
+            // 如果房间不存在，直接删除玩家
+            playerManager.removePlayer(userId);
+            return true;
+        }
+        roomManager.submit(room, () -> roomSync.execute(room, () -> {
+            if (room.getPlayer(userId)!=player || sessions.containsKey(userId)) {
+                return false;
+            }
+            long start = Trace.start();
             if (!room.isStarted()) {
                 playerManager.removePlayer(userId);
-                System.out.println("Player removed: " + userId);
                 room.removePlayer(userId);
-                System.out.println("Player removed from room: " + userId);
-                
+                journal.append(room, JournalOp.LEAVE_ROOM, userId);
+                Trace.record(room, TraceOp.REMOVE_PLAYER, userId, start, true);
             } else {
                 // 如果房间已经开始，玩家对象不删除，标记为不活跃
                 player.setActive(false);
-                System.out.println("Player marked as inactive: " + userId);
+                room.markUpdated();
+                journal.append(room, JournalOp.DEACTIVATE, userId);
+                reaper.watchPlayer(room, player);
+                Trace.record(room, TraceOp.DEACTIVATE, userId, start, true);
                 if (userId.equals(room.getPlayerList().get(room.getCurrentPlayerIndex()).getUserId())) {
                     room.autoPlay(userId);
-                    System.out.println("Player autoplayed: " + userId);
+                    journal.append(room, JournalOp.AUTO_PLAY, userId);
                 }
             }
-        } else {
-            // 如果房间不存在，直接删除玩家
-            playerManager.removePlayer(userId);
-            System.out.println("Room not found, player removed: " + userId);
-        }
-        eventPublisher.publishEvent(new RoomUpdatedEvent(this, player.getRoomId()));
-        sessions.remove(userId);
-        System.out.println("Session for user " + userId + " disconnected. Total connections: " + sessions.size());
+            roomUpdates.markDirty(room);
+            return true;
+        }));
         return true;
     }
     
+    /**
+     * 会话是否是该用户最新的连接
+     */
+    public boolean isCurrent(String userId, ClientChannel session) {
+        return sessions.get(userId) == session;
+    }
+
     /**
      * 获取特定用户的会话
      */
-    public Optional<Session> getSession(String userId) {
+    public Optional<ClientChannel> getSession(String userId) {
         return Optional.ofNullable(sessions.get(userId));
     }
     
     /**
      * 获取所有会话
      */
-    public Set<Map.Entry<String, Session>> getAllSessions() {
+    public Set<Map.Entry<String, ClientChannel>> getAllSessions() {
         return sessions.entrySet();
     }
     
@@ -90,6 +159,80 @@ public class SessionManager {
         return sessions.size();
     }
     
+    /**
+     * 按会话协商的格式发送消息
+     */
+    public void send(ClientChannel session, Message<?> message) {
+        send(session, new EncodedMessage(message));
+    }
+
+    public void send(ClientChannel session, EncodedMessage message) {
+        // 增量归属于房间，新的快照入队时可以被合并掉
+        String roomId = message.getMessage().getData() instanceof RoomDelta delta ? delta.getRoomId() : null;
+        OutboundQueue queue = queue(session);
+        if (queue == null) return;
+        if (WireFormat.of(session)==WireFormat.BINARY) {
+            offered(session, queue, queue.offerBinary(message.binary(), roomId, false));
+        } else {
+            offered(session, queue, queue.offerText(message.text(), roomId, false));
+        }
+    }
+
+    /**
+     * 发送房间快照，只包含该用户自己的手牌。队列中同一房间还没发出的快照和增量会被丢弃
+     */
+    public void sendRoom(ClientChannel session, RoomFrame frame, String userId) {
+        OutboundQueue queue = queue(session);
+        if (queue == null) return;
+        if (WireFormat.of(session)==WireFormat.BINARY) {
+            offered(session, queue, queue.offerBinary(frame.forUserBinary(userId), frame.getRoomId(), true));
+        } else {
+            offered(session, queue, queue.offerText(frame.forUser(userId), frame.getRoomId(), true));
+        }
+    }
+
+    /**
+     * 发送观众共用的公共帧，所有接收者共用同一份编码结果。队列中同一房间还没发出的帧会被丢弃
+     */
+    public void sendPublic(ClientChannel session, SharedFrame frame) {
+        OutboundQueue queue = queue(session);
+        if (queue == null) return;
+        if (WireFormat.of(session)==WireFormat.BINARY) {
+            offered(session, queue, queue.offerBinary(ByteBuffer.wrap(frame.binary()), frame.roomId(), true));
+        } else {
+            offered(session, queue, queue.offerText(frame.text(), frame.roomId(), true));
+        }
+    }
+
+    /**
+     * 发送纯文本
+     */
+    public void sendText(ClientChannel session, String text) {
+        OutboundQueue queue = queue(session);
+        if (queue == null) return;
+        offered(session, queue, queue.offerText(text, null, false));
+    }
+
+    private void offered(ClientChannel session, OutboundQueue queue, OutboundQueue.Result result) {
+        if (result != OutboundQueue.Result.OVERFLOW) return;
+        // 客户端读得太慢：按断线处理，玩家在游戏中时标记为不活跃
+        String userId = queue.getUserId();
+        System.err.println("Disconnecting slow client " + userId + ": outbound queue over budget");
+        if (userId != null) {
+            removeSession(userId, session);
+        }
+        closer.execute(() -> session.close(ClientChannel.TRY_AGAIN_LATER, "Outbound queue overflow"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closer.shutdown();
+    }
+
+    public OutboundQueue.Counters getOutboundCounters() {
+        return outboundCounters;
+    }
+
     /**
      * 广播消息给所有用户
      */
@@ -97,7 +240,7 @@ public class SessionManager {
         sessions.values().forEach(session -> {
             if (session.isOpen()) {
                 try {
-                    session.getAsyncRemote().sendText(message);
+                    sendText(session, message);
                 } catch (Exception e) {
                     System.err.println("Error sending message to user: " + e.getMessage());
                 }
@@ -109,10 +252,10 @@ public class SessionManager {
      * 发送消息给特定用户
      */
     public boolean sendMessageToUser(String userId, String message) {
-        Session session = sessions.get(userId);
+        ClientChannel session = sessions.get(userId);
         if (session != null && session.isOpen()) {
             try {
-                session.getAsyncRemote().sendText(message);
+                sendText(session, message);
                 return true;
             } catch (Exception e) {
                 System.err.println("Error sending message to user " + userId + ": " + e.getMessage());
@@ -0,0 +1,78 @@
+package org.huex.liarbarback.managers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.journal.JournalOp;
+import org.huex.liarbarback.models.Room;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 回合计时：轮到的玩家在 timeout-ms 内没有出牌、跳过或质疑时替他自动出牌，在线但不操作的玩家不会卡住整桌。
+ * 每个进行中的房间在共用的时间轮上只挂一个任务，回合变化（Room.turn 递增）时取消旧任务重新调度，都是 O(1)。
+ */
+@Component
+public class TurnTimer {
+    @Autowired private RoomManager roomManager;
+    @Autowired private RoomUpdateBus roomUpdates;
+    @Autowired private TimingWheel timingWheel;
+    @Autowired private GameJournal journal = GameJournal.disabled();
+
+    @Value("${liarbar.turn.timeout-ms:30000}") private long timeoutMillis;
+
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * 房间状态变化后调用，回合变化时重新计时，对局结束或房间删除时取消。必须在房间邮箱中调用
+     */
+    public void update(Room room) {
+        boolean running = timeoutMillis > 0 && room.isStarted() && !room.isEnded()
+            && roomManager.getRoom(room.getId()).orElse(null) == room;
+        TimingWheel.Timeout armed = room.getTurnTimeout();
+        if (running && armed != null && room.getTurnTimeoutTurn() == room.getTurn()) return;
+        if (armed != null) {
+            armed.cancel();
+            room.setTurnTimeout(null);
+        }
+        if (!running) return;
+        long turn = room.getTurn();
+        room.setTurnTimeout(timingWheel.schedule(
+            () -> roomManager.submit(room, () -> expire(room, turn)),
+            timeoutMillis, TimeUnit.MILLISECONDS));
+        room.setTurnTimeoutTurn(turn);
+    }
+
+    private boolean expire(Room room, long turn) {
+        // 房间在计时期间被删除（例如被清理）时不再自动出牌
+        if (roomManager.getRoom(room.getId()).orElse(null) != room) return false;
+        if (room.getTurn() != turn || !room.isStarted() || room.isEnded()) return false;
+        room.setTurnTimeout(null);
+        room.setExpiredTurn(turn);
+        expired.increment();
+        String userId = room.getPlayerList().get(room.getCurrentPlayerIndex()).getUserId();
+        boolean success = room.autoPlay(userId);
+        journal.append(room, JournalOp.AUTO_PLAY, userId);
+        // 广播后的刷新会为下一个回合重新计时
+        roomUpdates.markDirty(room);
+        return success;
+    }
+
+    /**
+     * 共享存储写入冲突、本地修改被存储中的状态覆盖后调用：本节点已经超时的回合在存储中仍是当前回合时重新自动出牌，
+     * 超时不会因为冲突丢失。必须在房间邮箱中调用
+     */
+    public void resume(Room room) {
+        if (room.getExpiredTurn() == room.getTurn()) {
+            expire(room, room.getTurn());
+        }
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+}
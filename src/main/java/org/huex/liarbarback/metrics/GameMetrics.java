@@ -0,0 +1,195 @@
+package org.huex.liarbarback.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import org.huex.liarbarback.OutboundQueue;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.Reaper;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.managers.TurnTimer;
+import org.huex.liarbarback.models.Message.MsgType;
+import org.huex.liarbarback.spectators.SpectatorFanout;
+import org.huex.liarbarback.store.RoomSync;
+import org.huex.liarbarback.store.SnapshotService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 业务指标，通过 /actuator/prometheus 暴露。
+ * 计量器注册一次后按下标缓存，记录时不按标签查找。
+ */
+@Component
+public class GameMetrics {
+    // 消息处理结果：成功、业务上失败（返回 false）、抛出异常
+    private static final String[] OUTCOMES = {"success", "failed", "error"};
+    private static final int SUCCESS = 0, FAILED = 1, ERROR = 2;
+
+    @Autowired private MeterRegistry registry;
+    @Autowired private SessionManager sessionManager;
+    @Autowired private RoomManager roomManager;
+    @Autowired private PlayerManager playerManager;
+    @Autowired private RoomUpdateBus roomUpdates;
+    @Autowired private Reaper reaper;
+    @Autowired private TurnTimer turnTimer;
+    @Autowired private RoomSync roomSync;
+    @Autowired private SnapshotService snapshots;
+    @Autowired private GameJournal journal;
+    @Autowired private SpectatorFanout spectators;
+
+    // 按 MsgType 下标缓存，收到某种消息时才注册，避免为响应类型生成无用的时间序列
+    private final AtomicReferenceArray<Timer[]> messageTimers = new AtomicReferenceArray<>(MsgType.values().length);
+    private Timer snapshotTimer;
+    private Timer deltaTimer;
+    private DistributionSummary fanOut;
+
+    @PostConstruct
+    public void register() {
+        snapshotTimer = broadcastTimer("snapshot");
+        deltaTimer = broadcastTimer("delta");
+        fanOut = DistributionSummary.builder("liarbar.broadcast.fanout")
+            .description("Number of sessions a room broadcast was sent to")
+            .baseUnit("sessions")
+            .publishPercentileHistogram()
+            .register(registry);
+
+        Gauge.builder("liarbar.sessions", sessionManager, SessionManager::getConnectionCount)
+            .description("Open WebSocket sessions")
+            .register(registry);
+        Gauge.builder("liarbar.rooms", roomManager, RoomManager::getRoomCount)
+            .description("Rooms in memory")
+            .register(registry);
+        Gauge.builder("liarbar.games.started", roomManager, RoomManager::getStartedGameCount)
+            .description("Rooms with a game in progress")
+            .register(registry);
+        Gauge.builder("liarbar.players", playerManager, PlayerManager::getPlayerCount)
+            .description("Players in rooms")
+            .register(registry);
+
+        FunctionCounter.builder("liarbar.room.updates", roomUpdates, RoomUpdateBus::getMarkedCount)
+            .description("Room updates marked dirty on the update bus")
+            .tag("stage", "marked")
+            .register(registry);
+        FunctionCounter.builder("liarbar.room.updates", roomUpdates, RoomUpdateBus::getFlushedCount)
+            .description("Room updates marked dirty on the update bus")
+            .tag("stage", "flushed")
+            .register(registry);
+
+        FunctionCounter.builder("liarbar.turn.timeouts", turnTimer, TurnTimer::getExpiredCount)
+            .description("Turns auto-played because the current player did not act in time")
+            .register(registry);
+
+        storeCounter("saved", RoomSync::getSavedCount);
+        storeCounter("conflict", RoomSync::getConflictCount);
+        storeCounter("received", RoomSync::getReceivedCount);
+
+        FunctionCounter.builder("liarbar.snapshot.writes", snapshots, SnapshotService::getWrittenCount)
+            .description("Room snapshots written to disk")
+            .register(registry);
+        Gauge.builder("liarbar.snapshot.size", snapshots, SnapshotService::getLastBytes)
+            .description("Size of the last room snapshot")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("liarbar.journal.records", journal, GameJournal::getRecordCount)
+            .description("Operations written to the game journal")
+            .register(registry);
+        FunctionCounter.builder("liarbar.journal.batches", journal, GameJournal::getBatchCount)
+            .description("Group commits of the game journal, each followed by one fsync")
+            .register(registry);
+
+        Gauge.builder("liarbar.spectators", spectators, SpectatorFanout::getSpectatorCount)
+            .description("Connections currently spectating a room")
+            .register(registry);
+        FunctionCounter.builder("liarbar.spectator.frames", spectators, SpectatorFanout::getEncodedCount)
+            .description("Public room frames encoded for spectators, once per room version")
+            .register(registry);
+        FunctionCounter.builder("liarbar.spectator.deliveries", spectators, SpectatorFanout::getDeliveredCount)
+            .description("Public room frames queued to spectator connections")
+            .register(registry);
+        FunctionCounter.builder("liarbar.spectator.limited", spectators, SpectatorFanout::getLimitedCount)
+            .description("Room updates held back by the spectator rate limit")
+            .register(registry);
+
+        reapedCounter("room", Reaper::getReapedRooms);
+        reapedCounter("player", Reaper::getReapedPlayers);
+        reapedCounter("session", Reaper::getReapedSessions);
+
+        OutboundQueue.Counters outbound = sessionManager.getOutboundCounters();
+        outboundCounter("coalesced", "Queued room updates replaced by a newer snapshot before being sent", outbound.coalesced);
+        outboundCounter("dropped", "Messages dropped because a connection's outbound queue was full", outbound.dropped);
+        outboundCounter("overflowed", "Connections closed for staying over the outbound queue budget", outbound.overflowed);
+    }
+
+    private Timer[] messageTimers(MsgType msgType) {
+        Timer[] timers = messageTimers.get(msgType.ordinal());
+        if (timers == null) {
+            // 并发注册时 registry 返回同一个计量器
+            timers = new Timer[OUTCOMES.length];
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                timers[i] = Timer.builder("liarbar.messages")
+                    .description("Time from receiving a message to finishing its handling, including mailbox queueing")
+                    .tag("type", msgType.name())
+                    .tag("outcome", OUTCOMES[i])
+                    .publishPercentileHistogram()
+                    .register(registry);
+            }
+            messageTimers.set(msgType.ordinal(), timers);
+        }
+        return timers;
+    }
+
+    private void storeCounter(String result, ToDoubleFunction<RoomSync> count) {
+        FunctionCounter.builder("liarbar.store", roomSync, count)
+            .description("Room writes to the shared store, version conflicts and changes received from other nodes")
+            .tag("result", result)
+            .register(registry);
+    }
+
+    private void reapedCounter(String kind, ToDoubleFunction<Reaper> count) {
+        FunctionCounter.builder("liarbar.reaped", reaper, count)
+            .description("Idle rooms, players and sessions evicted by the reaper")
+            .tag("kind", kind)
+            .register(registry);
+    }
+
+    private void outboundCounter(String reason, String description, LongAdder counter) {
+        FunctionCounter.builder("liarbar.outbound", counter, LongAdder::sum)
+            .description(description)
+            .tag("reason", reason)
+            .register(registry);
+    }
+
+    private Timer broadcastTimer(String kind) {
+        return Timer.builder("liarbar.broadcast")
+            .description("Time to build and send one room broadcast")
+            .tag("kind", kind)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    /**
+     * 记录一条消息的处理耗时，startNanos 来自 System.nanoTime()
+     */
+    public void recordMessage(MsgType msgType, long startNanos, Boolean success, Throwable error) {
+        if (msgType == null) return;
+        int outcome = error != null ? ERROR : Boolean.TRUE.equals(success) ? SUCCESS : FAILED;
+        messageTimers(msgType)[outcome].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBroadcast(boolean snapshot, int recipients, long startNanos) {
+        (snapshot ? snapshotTimer : deltaTimer).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        fanOut.record(recipients);
+    }
+}
@@ -0,0 +1,60 @@
+package org.huex.liarbarback.models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// BinaryReader.java
+// 与 BinaryWriter 对应的读取端，数据不完整时抛出 BufferUnderflowException
+public class BinaryReader {
+  private final ByteBuffer buffer;
+
+  public BinaryReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  public int readByte() {
+    return buffer.get() & 0xFF;
+  }
+
+  public boolean readBoolean() {
+    return readByte() != 0;
+  }
+
+  public long readVarint() {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  public long readZigZag() {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public String readString() {
+    long length = readVarint();
+    if (length == 0) {
+      return null;
+    }
+    if (length - 1 > buffer.remaining()) {
+      throw new IllegalArgumentException("String length exceeds frame");
+    }
+    byte[] bytes = new byte[(int) (length - 1)];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public Card readCard() {
+    return Card.fromByte(readByte());
+  }
+
+  public boolean hasRemaining() {
+    return buffer.hasRemaining();
+  }
+}
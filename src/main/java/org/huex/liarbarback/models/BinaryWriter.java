@@ -0,0 +1,77 @@
+package org.huex.liarbarback.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// BinaryWriter.java
+// 二进制协议的写缓冲：整数用 varint，牌用单字节，字符串用 长度+1 前缀的 UTF-8（0 表示 null）
+public class BinaryWriter {
+  private byte[] buf;
+  private int size;
+
+  public BinaryWriter() {
+    this(64);
+  }
+
+  public BinaryWriter(int capacity) {
+    buf = new byte[Math.max(capacity, 16)];
+  }
+
+  public BinaryWriter writeByte(int b) {
+    ensure(1);
+    buf[size++] = (byte) b;
+    return this;
+  }
+
+  public BinaryWriter writeBoolean(boolean b) {
+    return writeByte(b ? 1 : 0);
+  }
+
+  public BinaryWriter writeVarint(long value) {
+    ensure(10);
+    while ((value & ~0x7FL) != 0) {
+      buf[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buf[size++] = (byte) value;
+    return this;
+  }
+
+  public BinaryWriter writeZigZag(long value) {
+    return writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  public BinaryWriter writeString(String s) {
+    if (s == null) {
+      return writeVarint(0);
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    writeVarint(bytes.length + 1L);
+    return writeBytes(bytes);
+  }
+
+  public BinaryWriter writeCard(Card card) {
+    return writeByte(card.toByte());
+  }
+
+  public BinaryWriter writeBytes(byte[] bytes) {
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buf, size, bytes.length);
+    size += bytes.length;
+    return this;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, size);
+  }
+
+  private void ensure(int extra) {
+    if (size + extra > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+    }
+  }
+}
@@ -1,14 +1,22 @@
 package org.huex.liarbarback.models;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 import lombok.*;
 
 
-@Getter @AllArgsConstructor @NoArgsConstructor
+/**
+ * 牌是不可变的享元：每种花色和点数只有一个实例，通过 of() 获取。
+ * 52 张真实的牌各占 long 中的一位（index = 花色 * 13 + 点数 - 1），手牌、出牌和牌堆都用位掩码表示。
+ */
+@Getter
 public class Card {
     @JsonFormat(shape = JsonFormat.Shape.NUMBER)
     public enum Suit {
@@ -19,8 +27,88 @@ public class Card {
     public enum Rank {
         NULL, ACE, TWO, THREE, FOUR, FIVE, SIX, SEVEN, EIGHT, NINE, TEN, JACK, QUEEN, KING
     }
-    private Suit suit;
-    private Rank rank;
+    public static final int DECK_SIZE = 52;
+
+    private static final Card[][] CARDS = new Card[Suit.values().length][Rank.values().length];
+    private static final Card[] BY_INDEX = new Card[DECK_SIZE];
+    private static final long[] RANK_MASKS = new long[Rank.values().length];
+
+    static {
+        for (Suit suit : Suit.values()) {
+            for (Rank rank : Rank.values()) {
+                Card card = new Card(suit, rank);
+                CARDS[suit.ordinal()][rank.ordinal()] = card;
+                if (card.index >= 0) {
+                    BY_INDEX[card.index] = card;
+                    RANK_MASKS[rank.ordinal()] |= card.mask();
+                }
+            }
+        }
+    }
+
+    private final Suit suit;
+    private final Rank rank;
+    @JsonIgnore private final int index; // 不是真实的牌（UNKNOWN 或 NULL）时为 -1
+
+    private Card(Suit suit, Rank rank) {
+        this.suit = suit;
+        this.rank = rank;
+        this.index = suit==Suit.UNKNOWN || rank==Rank.NULL ? -1 : suit.ordinal()*13 + rank.ordinal()-1;
+    }
+
+    @JsonCreator
+    public static Card of(@JsonProperty("suit") Suit suit, @JsonProperty("rank") Rank rank) {
+        return CARDS[(suit==null ? Suit.UNKNOWN : suit).ordinal()][(rank==null ? Rank.NULL : rank).ordinal()];
+    }
+
+    public static Card ofIndex(int index) {
+        return BY_INDEX[index];
+    }
+
+    /**
+     * 这张牌在位掩码中对应的位，不是真实的牌时为 0
+     */
+    public long mask() {
+        return index < 0 ? 0L : 1L << index;
+    }
+
+    /**
+     * 某个点数四种花色的掩码
+     */
+    public static long rankMask(Rank rank) {
+        return RANK_MASKS[rank.ordinal()];
+    }
+
+    /**
+     * 一组牌的掩码，其中有不是真实的牌时返回 -1
+     */
+    public static long maskOf(Collection<Card> cards) {
+        long mask = 0L;
+        for (Card card : cards) {
+            if (card==null || card.index < 0) return -1L;
+            mask |= card.mask();
+        }
+        return mask;
+    }
+
+    /**
+     * 按 index 顺序列出掩码中的牌，只在序列化时使用
+     */
+    public static List<Card> listOf(long mask) {
+        List<Card> cards = new ArrayList<>(Long.bitCount(mask));
+        while (mask != 0) {
+            cards.add(BY_INDEX[Long.numberOfTrailingZeros(mask)]);
+            mask &= mask - 1;
+        }
+        return cards;
+    }
+
+    /**
+     * 掩码中 index 最小的牌，掩码为空时返回 null
+     */
+    public static Card firstOf(long mask) {
+        return mask==0 ? null : BY_INDEX[Long.numberOfTrailingZeros(mask)];
+    }
 
     @Override
     public String toString()
@@ -91,53 +179,25 @@ public class Card {
         return this.suit == other.suit && this.rank == other.rank;
     }
 
-    public static boolean moveCards(List<Card> from, List<Card> to, List<Card> cards) {
-        List<Card> fromCopy = new ArrayList<>(from); // 防止修改原始参数
-        List<Card> toCopy = new ArrayList<>(to); // 防止修改原始参数
-
-        System.out.println("Start moving cards: ");
-        System.out.println("From: "+fromCopy);
-        System.out.println("To: "+toCopy);
-        System.out.println("Cards: "+cards);
-
-        // 1. 验证输入
-        if (from == null || to == null || cards == null || cards.isEmpty()) {
-            return false;
-        }
-
-        // 2. 检查所有 card 是否存在于 from 中（假设 Card 已正确重写 equals()）
-        if (!from.containsAll(cards)) {
-            return false;
-        }
+    @Override
+    public int hashCode() {
+        return suit.ordinal() << 4 | rank.ordinal();
+    }
 
-        // 3. 执行移动（避免并发问题）
-        try {
-            // 注意必须先add在remove！因为cards和from可能是同一个
-            to.addAll(cards);
-            from.removeAll(cards); // 依赖 Card.equals()
-            System.out.println("End moving cards: ");
-            System.out.println("From: "+from);
-            System.out.println("To: "+to);
-            return true;
-        } catch (Exception e) {
-            // 处理可能的并发异常或操作失败
-            from.clear();
-            from.addAll(fromCopy);
-            to.clear();
-            to.addAll(toCopy);
-            System.out.println("Error moving cards: "+cards);
-            return false;
-        }
+    /**
+     * 二进制协议中的单字节表示：高 4 位花色，低 4 位点数
+     */
+    public byte toByte() {
+        return (byte) (suit.ordinal() << 4 | rank.ordinal());
     }
 
-    public static boolean moveAllCards(List<Card> from, List<Card> to) {
-        boolean success = moveCards(from, to, from);
-        if (!success) {
-            return false;
+    public static Card fromByte(int b) {
+        int suit = (b >> 4) & 0x0F;
+        int rank = b & 0x0F;
+        if (suit >= Suit.values().length || rank >= Rank.values().length) {
+            throw new IllegalArgumentException("Invalid card byte: " + b);
         }
-        from.clear();
-        return true;
+        return CARDS[suit][rank];
     }
 
-
 }
@@ -0,0 +1,41 @@
+package org.huex.liarbarback.models;
+
+import java.nio.ByteBuffer;
+
+import jakarta.websocket.EncodeException;
+
+// EncodedMessage.java
+// 同一条消息按需编码一次，多个接收者共用编码结果
+public class EncodedMessage {
+  private static final MessageEncoder textEncoder = new MessageEncoder();
+
+  private final Message<?> message;
+  private String text;
+  private byte[] binary;
+
+  public EncodedMessage(Message<?> message) {
+    this.message = message;
+  }
+
+  public Message<?> getMessage() {
+    return message;
+  }
+
+  public String text() {
+    if (text == null) {
+      try {
+        text = textEncoder.encode(message);
+      } catch (EncodeException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return text;
+  }
+
+  public ByteBuffer binary() {
+    if (binary == null) {
+      binary = MessageBinaryEncoder.toBytes(message);
+    }
+    return ByteBuffer.wrap(binary);
+  }
+}
@@ -1,5 +1,6 @@
 package org.huex.liarbarback.models;
 
+import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
@@ -11,18 +12,18 @@ public class Message<T> {
     @JsonFormat(shape = JsonFormat.Shape.NUMBER)
     public enum MsgType {
         // Request
-        CREATE_ROOM, // null
-        JOIN_ROOM, // String roomId
-        LEAVE_ROOM, // null
-        CHANGE_NAME, // String newName
-        GET_ROOM_PLAYERS, // null
-        PREPARE, // boolean isReady
-        CANCEL_PREPARE, 
-        START_GAME, // boolean
-        PLAY_CARDS, // String cardId
-        SKIP,
-        CHALLENGE,
-        RESTART,
+        CREATE_ROOM(Void.class), // null
+        JOIN_ROOM(String.class), // String roomId
+        LEAVE_ROOM(Void.class), // null
+        CHANGE_NAME(String.class), // String newName
+        GET_ROOM_PLAYERS(String.class), // String roomId
+        PREPARE(Boolean.class), // boolean isReady
+        CANCEL_PREPARE(Void.class), 
+        START_GAME(Void.class), // null
+        PLAY_CARDS(PlayCards.class), // PlayCards
+        SKIP(Void.class),
+        CHALLENGE(Void.class),
+        RESTART(Void.class),
 
         // Response
         WELCOME,
@@ -30,7 +31,7 @@ public class Message<T> {
         ROOM_JOINED,
         ROOM_LEFT,
         NAME_CHANGED,
-        ROOM_PLAYERS_LIST,
+        ROOM_PLAYERS_LIST(Room.class),
         PREPARED,
         CANCELLED_PREPARE,
         GAME_STARTED,
@@ -50,14 +51,48 @@ public class Message<T> {
         GAME_ALREADY_FINISHED,
         GAME_NOT_FOUND,
         PLAYER_NOT_FOUND,
+
+        // Delta protocol
+        RESYNC(Long.class), // long knownVersion
+        ROOM_DELTA(RoomDelta.class),
+
+        // Spectators
+        SPECTATE_ROOM(String.class), // String roomId，之后收到该房间的公共视角，LEAVE_ROOM 停止观看
+
+        // Batches
+        BATCH(List.class), // List<Message> 按顺序处理的多条请求，不能嵌套，最多 MAX_BATCH 条
+        BATCH_RESULT(List.class), // List<Boolean> 每条请求是否成功，顺序和 BATCH 相同
+        ;
+
+        // data 字段的类型，Void 表示不带数据
+        private final Class<?> dataType;
+
+        MsgType() {
+            this(String.class);
+        }
+
+        MsgType(Class<?> dataType) {
+            this.dataType = dataType;
+        }
+
+        public Class<?> getDataType() {
+            return dataType;
+        }
+
+        public boolean accepts(Object data) {
+            return dataType == Void.class || dataType.isInstance(data);
+        }
     }
 
+    // 一个 BATCH 最多携带的消息数
+    public static final int MAX_BATCH = 32;
+
     private String msgId;
     private MsgType msgType;
     private T data;
 
     public Message(MsgType msgType, T data) {
-        this.msgId = java.util.UUID.randomUUID().toString();
+        this.msgId = MsgIds.next();
         this.msgType = msgType;
         this.data = data;
     }
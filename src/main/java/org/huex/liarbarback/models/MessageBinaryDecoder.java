@@ -0,0 +1,86 @@
+package org.huex.liarbarback.models;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.huex.liarbarback.models.Message.MsgType;
+
+import jakarta.websocket.DecodeException;
+import jakarta.websocket.Decoder;
+
+// MessageBinaryDecoder.java
+// 解析客户端发来的二进制消息，格式见 MessageBinaryEncoder
+public class MessageBinaryDecoder implements Decoder.Binary<Message<?>> {
+  private static final int MAX_CARDS = 52;
+
+  @Override
+  public Message<?> decode(ByteBuffer bytes) throws DecodeException {
+    ByteBuffer copy = bytes.duplicate();
+    try {
+      return readMessage(new BinaryReader(bytes));
+    } catch (RuntimeException e) {
+      throw new DecodeException(copy, "反序列化失败: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public boolean willDecode(ByteBuffer bytes) {
+    return bytes != null && bytes.hasRemaining();
+  }
+
+  static Message<?> readMessage(BinaryReader reader) {
+    long ordinal = reader.readVarint();
+    if (ordinal >= MsgType.values().length) {
+      throw new IllegalArgumentException("Unknown msgType: " + ordinal);
+    }
+    MsgType msgType = MsgType.values()[(int) ordinal];
+    String msgId = reader.readString();
+    Object data = null;
+    if (msgType.getDataType() != Void.class && reader.readBoolean()) {
+      data = msgType == MsgType.BATCH ? readBatch(reader) : readData(msgType.getDataType(), reader);
+    }
+    return new Message<>(msgId, msgType, data);
+  }
+
+  private static List<Message<?>> readBatch(BinaryReader reader) {
+    long count = reader.readVarint();
+    if (count > Message.MAX_BATCH) {
+      throw new IllegalArgumentException("Too many messages in batch: " + count);
+    }
+    List<Message<?>> items = new ArrayList<>((int) count);
+    for (int i = 0; i < count; i++) {
+      Message<?> item = readMessage(reader);
+      if (item.getMsgType() == MsgType.BATCH) {
+        throw new IllegalArgumentException("Nested batch");
+      }
+      items.add(item);
+    }
+    return items;
+  }
+
+  private static Object readData(Class<?> dataType, BinaryReader reader) {
+    if (dataType == String.class) {
+      return reader.readString();
+    } else if (dataType == Boolean.class) {
+      return reader.readBoolean();
+    } else if (dataType == Long.class) {
+      return reader.readZigZag();
+    } else if (dataType == PlayCards.class) {
+      long count = reader.readVarint();
+      if (count > MAX_CARDS) {
+        throw new IllegalArgumentException("Too many cards: " + count);
+      }
+      List<Card> cards = new ArrayList<>((int) count);
+      for (int i = 0; i < count; i++) {
+        cards.add(reader.readCard());
+      }
+      int rank = reader.readByte();
+      if (rank >= Card.Rank.values().length) {
+        throw new IllegalArgumentException("Invalid claim rank: " + rank);
+      }
+      return new PlayCards(cards, Card.Rank.values()[rank]);
+    }
+    throw new IllegalArgumentException("Unsupported payload: " + dataType.getSimpleName());
+  }
+}
@@ -0,0 +1,161 @@
+package org.huex.liarbarback.models;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.huex.liarbarback.models.Message.MsgType;
+
+import jakarta.websocket.EncodeException;
+import jakarta.websocket.Encoder;
+
+// MessageBinaryEncoder.java
+// 紧凑二进制格式：varint 消息类型 + msgId + 数据（非 Void 类型先写一个字节表示是否有数据）
+public class MessageBinaryEncoder implements Encoder.Binary<Message<?>> {
+  private static final int STARTED = 1, ENDED = 2;
+  private static final int ACTIVE = 1, READY = 2, HOST = 4, REVEALED = 8;
+
+  @Override
+  public ByteBuffer encode(Message<?> message) throws EncodeException {
+    try {
+      return ByteBuffer.wrap(toBytes(message));
+    } catch (RuntimeException e) {
+      throw new EncodeException(message, "序列化失败", e);
+    }
+  }
+
+  public static byte[] toBytes(Message<?> message) {
+    BinaryWriter writer = new BinaryWriter();
+    writeHeader(writer, message.getMsgType(), message.getMsgId());
+    writeData(writer, message.getMsgType(), message.getData());
+    return writer.toByteArray();
+  }
+
+  static void writeHeader(BinaryWriter writer, MsgType msgType, String msgId) {
+    writer.writeVarint(msgType.ordinal());
+    writer.writeString(msgId);
+  }
+
+  static void writeData(BinaryWriter writer, MsgType msgType, Object data) {
+    if (msgType.getDataType() == Void.class) return;
+    if (data == null) {
+      writer.writeByte(0);
+      return;
+    }
+    writer.writeByte(1);
+    if (data instanceof String s) {
+      writer.writeString(s);
+    } else if (data instanceof Boolean b) {
+      writer.writeBoolean(b);
+    } else if (data instanceof Long l) {
+      writer.writeZigZag(l);
+    } else if (data instanceof PlayCards playCards) {
+      writeCards(writer, playCards.getCards());
+      writer.writeByte(playCards.getClaimRank().ordinal());
+    } else if (data instanceof Room room) {
+      writeRoomHead(writer, room);
+      for (Player player : room.getPlayerList()) {
+        writePlayer(writer, player, false);
+      }
+    } else if (data instanceof RoomDelta delta) {
+      writeDelta(writer, delta);
+    } else if (data instanceof List<?> items) {
+      // BATCH 的各条消息，或者 BATCH_RESULT 的各条结果
+      writer.writeVarint(items.size());
+      for (Object item : items) {
+        if (item instanceof Message<?> message) {
+          writeHeader(writer, message.getMsgType(), message.getMsgId());
+          writeData(writer, message.getMsgType(), message.getData());
+        } else {
+          writer.writeBoolean((Boolean) item);
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported payload: " + data.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * 房间公共字段，之后紧跟 playerCount 个玩家
+   */
+  static void writeRoomHead(BinaryWriter writer, Room room) {
+    List<Player> players = room.getPlayerList();
+    writer.writeString(room.getId());
+    writer.writeVarint(room.getVersion());
+    writer.writeVarint(room.getMaxPlayers());
+    writer.writeByte((room.isStarted() ? STARTED : 0) | (room.isEnded() ? ENDED : 0));
+    writer.writeZigZag(room.getCurrentPlayerIndex());
+    writer.writeZigZag(room.getRoundBeginnerIndex());
+    writer.writeByte(room.getCurrentClaimRank().ordinal());
+    writer.writeVarint(Long.bitCount(room.getDeck()));
+    writer.writeZigZag(room.getWinner() == null ? -1 : players.indexOf(room.getWinner()));
+    writer.writeVarint(players.size());
+  }
+
+  /**
+   * 玩家字段，reveal 为 true 时附上手牌和出牌，否则只有数量
+   */
+  static void writePlayer(BinaryWriter writer, Player player, boolean reveal) {
+    writer.writeString(player.getUserId());
+    writer.writeString(player.getName());
+    writer.writeByte((player.isActive() ? ACTIVE : 0)
+        | (player.isReady() ? READY : 0)
+        | (player.isHost() ? HOST : 0)
+        | (reveal ? REVEALED : 0));
+    writer.writeVarint(player.getHandCount());
+    writer.writeVarint(player.getPlayedCount());
+    if (reveal) {
+      for (Card card : Card.listOf(player.getHand())) writer.writeCard(card);
+      for (Card card : Card.listOf(player.getPlayed())) writer.writeCard(card);
+    }
+  }
+
+  // 增量字段掩码
+  private static final int CURRENT_PLAYER = 1, ROUND_BEGINNER = 2, CLAIM_RANK = 4,
+      ENDED_FLAG = 8, WINNER = 16, DECK_SIZE = 32;
+  private static final int NAME = 1, ACTIVE_FLAG = 2, READY_FLAG = 4, HOST_FLAG = 8,
+      HAND_COUNT = 16, PLAYED_COUNT = 32, HAND_CARDS = 64, PLAYED_CARDS = 128;
+
+  static void writeDelta(BinaryWriter writer, RoomDelta delta) {
+    writer.writeString(delta.getRoomId());
+    writer.writeVarint(delta.getBaseVersion());
+    writer.writeVarint(delta.getVersion());
+    writer.writeVarint((delta.getCurrentPlayerIndex() != null ? CURRENT_PLAYER : 0)
+        | (delta.getRoundBeginnerIndex() != null ? ROUND_BEGINNER : 0)
+        | (delta.getCurrentClaimRank() != null ? CLAIM_RANK : 0)
+        | (delta.getEnded() != null ? ENDED_FLAG : 0)
+        | (delta.getWinnerIndex() != null ? WINNER : 0)
+        | (delta.getDeckSize() != null ? DECK_SIZE : 0));
+    if (delta.getCurrentPlayerIndex() != null) writer.writeZigZag(delta.getCurrentPlayerIndex());
+    if (delta.getRoundBeginnerIndex() != null) writer.writeZigZag(delta.getRoundBeginnerIndex());
+    if (delta.getCurrentClaimRank() != null) writer.writeByte(delta.getCurrentClaimRank().ordinal());
+    if (delta.getEnded() != null) writer.writeBoolean(delta.getEnded());
+    if (delta.getWinnerIndex() != null) writer.writeZigZag(delta.getWinnerIndex());
+    if (delta.getDeckSize() != null) writer.writeVarint(delta.getDeckSize());
+
+    writer.writeVarint(delta.getPlayers().size());
+    for (RoomDelta.PlayerDelta player : delta.getPlayers()) {
+      writer.writeVarint(player.getIndex());
+      writer.writeVarint((player.getName() != null ? NAME : 0)
+          | (player.getActive() != null ? ACTIVE_FLAG : 0)
+          | (player.getReady() != null ? READY_FLAG : 0)
+          | (player.getHost() != null ? HOST_FLAG : 0)
+          | (player.getHandCount() != null ? HAND_COUNT : 0)
+          | (player.getPlayedCount() != null ? PLAYED_COUNT : 0)
+          | (player.getHandCards() != null ? HAND_CARDS : 0)
+          | (player.getPlayedCards() != null ? PLAYED_CARDS : 0));
+      if (player.getName() != null) writer.writeString(player.getName());
+      if (player.getActive() != null) writer.writeBoolean(player.getActive());
+      if (player.getReady() != null) writer.writeBoolean(player.getReady());
+      if (player.getHost() != null) writer.writeBoolean(player.getHost());
+      if (player.getHandCount() != null) writer.writeVarint(player.getHandCount());
+      if (player.getPlayedCount() != null) writer.writeVarint(player.getPlayedCount());
+      if (player.getHandCards() != null) writeCards(writer, player.getHandCards());
+      if (player.getPlayedCards() != null) writeCards(writer, player.getPlayedCards());
+    }
+  }
+
+  static void writeCards(BinaryWriter writer, List<Card> cards) {
+    writer.writeVarint(cards.size());
+    for (Card card : cards) writer.writeCard(card);
+  }
+}
@@ -0,0 +1,120 @@
+package org.huex.liarbarback.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.huex.liarbarback.models.Message.MsgType;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import jakarta.websocket.DecodeException;
+import jakarta.websocket.Decoder;
+
+// MessageDecoder.java
+// 一次流式解析，根据 msgType 注册的类型直接反序列化 data
+public class MessageDecoder implements Decoder.Text<Message<?>> {
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final ObjectReader msgTypeReader = mapper.readerFor(MsgType.class);
+  private static final Map<MsgType, ObjectReader> dataReaders = new EnumMap<>(MsgType.class);
+
+  static {
+    for (MsgType msgType : MsgType.values()) {
+      if (msgType.getDataType() != Void.class) {
+        dataReaders.put(msgType, mapper.readerFor(msgType.getDataType()));
+      }
+    }
+  }
+
+  @Override
+  public Message<?> decode(String text) throws DecodeException {
+    try (JsonParser parser = mapper.createParser(text)) {
+      return readMessage(parser);
+    } catch (IOException | RuntimeException e) {
+      throw new DecodeException(text, "反序列化失败: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public boolean willDecode(String text) {
+    return text != null && !text.isEmpty();
+  }
+
+  static Message<?> readMessage(JsonParser parser) throws IOException {
+    parser.nextToken();
+    return readObject(parser);
+  }
+
+  private static Message<?> readObject(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Expected a JSON object");
+    }
+    String msgId = null;
+    MsgType msgType = null;
+    Object data = null;
+    TokenBuffer pendingData = null; // data 出现在 msgType 之前时先缓存
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "msgId" -> msgId = parser.getValueAsString();
+        case "msgType" -> msgType = msgTypeReader.readValue(parser);
+        case "data" -> {
+          if (msgType != null) {
+            data = readData(msgType, parser);
+          } else {
+            pendingData = new TokenBuffer(parser);
+            pendingData.copyCurrentStructure(parser);
+          }
+        }
+        default -> parser.skipChildren();
+      }
+    }
+    if (msgType == null) {
+      throw new IOException("Missing msgType");
+    }
+    if (pendingData != null) {
+      try (JsonParser buffered = pendingData.asParser(parser.getCodec())) {
+        buffered.nextToken();
+        data = readData(msgType, buffered);
+      }
+    }
+    return new Message<>(msgId, msgType, data);
+  }
+
+  private static Object readData(MsgType msgType, JsonParser parser) throws IOException {
+    ObjectReader reader = dataReaders.get(msgType);
+    if (reader == null || parser.currentToken() == JsonToken.VALUE_NULL) {
+      parser.skipChildren();
+      return null;
+    }
+    if (msgType == MsgType.BATCH) {
+      return readBatch(parser);
+    }
+    return reader.readValue(parser);
+  }
+
+  private static List<Message<?>> readBatch(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      throw new IOException("Expected a JSON array");
+    }
+    List<Message<?>> items = new ArrayList<>();
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (items.size() == Message.MAX_BATCH) {
+        throw new IOException("Too many messages in batch");
+      }
+      Message<?> item = readObject(parser);
+      if (item.getMsgType() == MsgType.BATCH) {
+        throw new IOException("Nested batch");
+      }
+      items.add(item);
+    }
+    return items;
+  }
+}
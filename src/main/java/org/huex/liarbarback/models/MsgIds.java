@@ -0,0 +1,81 @@
+package org.huex.liarbarback.models;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息 id 生成器，替代每条消息一次的 UUID.randomUUID()（共享的 SecureRandom 在多核下有竞争）。
+ *
+ * 64 位 id = 41 位毫秒时间戳（自 EPOCH 起）| 10 位节点号 | 12 位序号，编码成定长 13 位 36 进制字符串，
+ * 同一节点内严格递增，不同节点之间按时间排序。节点号由配置 liarbar.node.id 指定（0-1023，见 NodeConfig），
+ * 多实例部署时必须各不相同；未指定时随机选取。
+ *
+ * 时间戳和序号放在同一个 AtomicLong 里用 CAS 推进，同一毫秒内序号用完时借用下一毫秒，不需要等待时钟。
+ */
+public final class MsgIds {
+    public static final long EPOCH = 1735689600000L; // 2025-01-01T00:00:00Z
+    public static final int LENGTH = 13;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final char[] DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    // 启动时由 NodeConfig 设置，之前（以及测试中）使用随机节点号
+    private static volatile long node = new SecureRandom().nextInt((int) MAX_NODE + 1);
+    // 高位是时间戳，低 SEQUENCE_BITS 位是序号
+    private static final AtomicLong state = new AtomicLong();
+
+    private MsgIds() {
+    }
+
+    public static void setNode(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("liarbar.node.id must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        MsgIds.node = node;
+    }
+
+    public static long getNode() {
+        return node;
+    }
+
+    public static long nextLong() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long prev, next;
+        do {
+            prev = state.get();
+            next = Math.max(prev + 1, now);
+        } while (!state.compareAndSet(prev, next));
+        return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+    }
+
+    public static String next() {
+        return format(nextLong());
+    }
+
+    /**
+     * 定长 36 进制，按字符串比较的顺序和数值顺序一致。时间戳只有 41 位，id 的符号位始终为 0
+     */
+    public static String format(long id) {
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = DIGITS[(int) (id % 36)];
+            id /= 36;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * id 中的时间戳，毫秒
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static long nodeOf(long id) {
+        return id >>> SEQUENCE_BITS & MAX_NODE;
+    }
+}
@@ -1,7 +1,10 @@
 package org.huex.liarbarback.models;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.transport.ClientChannel;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import lombok.*;
 
@@ -13,8 +16,11 @@ public class Player {
     private boolean isReady;
     private boolean isHost;
     private String roomId;
-    private List<Card> handCards;
-    private List<Card> playedCards;
+    // 手牌和本轮打出的牌，位掩码见 Card
+    @JsonIgnore private long hand;
+    @JsonIgnore private long played;
+    @JsonIgnore private TimingWheel.Timeout idleTimeout; // 断线后等待清理的定时任务，见 Reaper
+    @JsonIgnore private volatile ClientChannel channel; // 本节点上接收这个玩家广播的连接，离开房间或断线时清除，见 ClientConnection
 
     public Player(String userId) {
         this.userId = userId;
@@ -22,8 +28,8 @@ public class Player {
         this.isActive = true;
         this.isReady = false;
         this.isHost = false; // Default to not being a host
-        handCards = new CopyOnWriteArrayList<>();
-        playedCards = new CopyOnWriteArrayList<>();
+        hand = 0L;
+        played = 0L;
     }
 
     @Override
@@ -33,40 +39,70 @@ public class Player {
             +(isActive?"Active":"Inactive")+"\t"
             +(isReady?"Ready":"NotReady")+"\t"
             +(isHost?"Host":"NotHost")+"\t"
-            +handCards.size()+"\t"
-            +playedCards.size()+"\n";
+            +getHandCount()+"\t"
+            +getPlayedCount()+"\n";
+    }
+
+    public List<Card> getHandCards() {
+        return Card.listOf(hand);
+    }
+
+    public List<Card> getPlayedCards() {
+        return Card.listOf(played);
+    }
+
+    @JsonIgnore
+    public int getHandCount() {
+        return Long.bitCount(hand);
+    }
+
+    @JsonIgnore
+    public int getPlayedCount() {
+        return Long.bitCount(played);
     }
 
     public boolean hasCard(Card card) {
-        return handCards.stream().anyMatch(handCard -> handCard.equals(card));
+        return card.mask()!=0 && (hand & card.mask())!=0;
     }
 
     public boolean playCard(Card card) {
         if (!hasCard(card)) return false; 
-        handCards.remove(card);
-        playedCards.add(card);
-        System.out.println(name + " played card: " + card);
+        hand &= ~card.mask();
+        played |= card.mask();
         return true;
     }
 
     public boolean playCards(List<Card> cards) {
-        boolean success = Card.moveCards(handCards, playedCards, cards);
-        if (!success) {
-            System.out.println(name + " failed to play cards: " + cards);
+        long mask = cards==null ? -1L : Card.maskOf(cards);
+        if (mask<=0 || (hand & mask)!=mask) {
             return false;
         }
-        System.out.println(name + " played cards: " + cards);
+        hand &= ~mask;
+        played |= mask;
         return true;
     }
 
     public void addCard(Card card) {
-        handCards.add(card);
+        hand |= card.mask();
+    }
+
+    public void addCards(long cards) {
+        hand |= cards;
+    }
+
+    /**
+     * 收回本轮打出的牌，返回它们的掩码
+     */
+    public long takePlayedCards() {
+        long cards = played;
+        played = 0L;
+        return cards;
     }
 
     public void restart() {
         isReady = false;
-        handCards.clear();
-        playedCards.clear();
+        hand = 0L;
+        played = 0L;
     }
 
 }
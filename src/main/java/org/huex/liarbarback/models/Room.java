@@ -3,13 +3,21 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.huex.liarbarback.concurrent.Mailbox;
+import org.huex.liarbarback.concurrent.TimingWheel;
 import org.huex.liarbarback.models.Card.*;
+import org.huex.liarbarback.spectators.Spectators;
+import org.huex.liarbarback.trace.Trace;
+import org.huex.liarbarback.trace.TraceBuffer;
+import org.huex.liarbarback.trace.TraceOp;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.*;
 
 @Getter @Setter @AllArgsConstructor
@@ -21,29 +29,70 @@ public class Room {
     private boolean isStarted;
     private boolean isEnded;
 
-    private List<Card> cardDeck;
+    @JsonIgnore private long deck; // 牌堆的位掩码
+    @JsonIgnore private SplittableRandom random; // 房间独立的随机源，只用来生成每局的种子
+    @JsonIgnore private long seed; // 本局洗牌所用的种子，传给 startGame(seed) 可以复现同样的发牌
+    @JsonIgnore private byte[] order; // 洗牌缓冲，按 Card.ofIndex 的下标存放，重开时复用
     private int currentPlayerIndex;
     private int roundBeginnerIndex;
     private Card.Rank currentClaimRank;
     private Player winner;
 
-
-    
+    private long version; // 每次状态变化递增
+    @JsonIgnore private RoomFrame frame; // 当前版本的广播帧缓存
+    @JsonIgnore private RoomState broadcastState; // 最近一次广播给客户端的状态
+    // 房间的所有状态只在自己的邮箱中读写，同一时刻只有一个线程访问
+    @JsonIgnore private Mailbox mailbox;
+    @JsonIgnore private TraceBuffer trace; // 未开启追踪时为 null
+    @JsonIgnore private long lastActivity; // 最近一次处理玩家消息的 System.nanoTime()，见 Reaper
+    @JsonIgnore private long turn; // 每次开局、出牌、跳过和质疑成功后递增，用来判断回合计时是否过期
+    @JsonIgnore private TimingWheel.Timeout turnTimeout; // 当前回合的计时，见 TurnTimer
+    @JsonIgnore private long turnTimeoutTurn; // turnTimeout 对应的 turn
+    @JsonIgnore private long expiredTurn = -1; // 本节点上最近一次超时自动出牌的 turn，写入冲突后重新执行，见 TurnTimer.resume
+    @JsonIgnore private long journalSeq; // 最近一条操作日志的 seq，见 GameJournal
+    @JsonIgnore private long storedVersion; // 最近一次写入或读出共享存储时的 version，-1 表示还没有写入，见 RoomSync
+    @JsonIgnore private final Spectators spectators = new Spectators(); // 观众，不属于房间状态，见 SpectatorFanout
 
     public Room(String id) {
         this.id=id;
-        playerList = new CopyOnWriteArrayList<>();
+        playerList = new ArrayList<>();
         maxPlayers = 8;
 
         isStarted = false;
         isEnded = false;
 
-        cardDeck = null;
+        deck = 0L;
+        random = new SplittableRandom();
+        seed = 0L;
+        order = new byte[Card.DECK_SIZE];
         currentPlayerIndex = -1;
         roundBeginnerIndex = -1;
         currentClaimRank = Rank.NULL;
 
         winner = null;
+
+        version = 0;
+        frame = null;
+        broadcastState = null;
+        mailbox = Mailbox.inline();
+        trace = Trace.newBuffer();
+        lastActivity = System.nanoTime();
+        storedVersion = -1;
+    }
+
+    /**
+     * 未开局时为 null
+     */
+    public List<Card> getCardDeck() {
+        return isStarted ? Card.listOf(deck) : null;
+    }
+
+    public void markUpdated() {
+        version++;
+    }
+
+    public void touch() {
+        lastActivity = System.nanoTime();
     }
 
     public Player getPlayer(String userId) {
@@ -60,7 +109,7 @@ public class Room {
             return false;
         }
         playerList.add(player);
-        System.out.println("Player " + player.getName() + " joined room "+id);
+        markUpdated();
         return true;
     }
 
@@ -71,7 +120,8 @@ public class Room {
                 playerList.get(1).setHost(true);
             }
             playerList.remove(player);
-            System.out.println("Player " + userId + " removed from room "+ id);
+            player.setChannel(null);
+            markUpdated();
             return true;
         }
         return false;
@@ -82,64 +132,82 @@ public class Room {
     }
 
     public boolean startGame() {
+        return startGame(random.nextLong());
+    }
+
+    /**
+     * 用指定的种子开局，同样的种子和玩家顺序得到同样的座次和发牌
+     */
+    public boolean startGame(long seed) {
         if (isStarted) {
-            System.out.println("Game already started");
             return false;
         }
 
         isStarted = true;
         isEnded = false;
+        this.seed = seed;
 
-        // Deal cards to players
-        cardDeck = new CopyOnWriteArrayList<>();
-        for (Suit suit : Suit.values()) {
-            if (suit==Suit.UNKNOWN) continue; // Skip UNKNOWN suit
-            for (Rank rank : Rank.values()) {
-                if (rank==Rank.NULL) continue;
-                cardDeck.add(new Card(suit, rank));
-            }
+        // Shuffle seats and cards (Fisher-Yates)
+        SplittableRandom rng = new SplittableRandom(seed);
+        for (int i=playerList.size()-1;i>0;i--) {
+            Collections.swap(playerList, i, rng.nextInt(i+1));
+        }
+        for (int i=0;i<Card.DECK_SIZE;i++) {
+            order[i] = (byte) i;
         }
-        Collections.shuffle(cardDeck);
-        Collections.shuffle(playerList);
+        for (int i=Card.DECK_SIZE-1;i>0;i--) {
+            int j = rng.nextInt(i+1);
+            byte tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        // Deal cards to players
         // n*m+2+k=52 && 2+k>=8
         int cardsPerPlayer = 52/playerList.size();
         int minOutCards = 8; // Can change later
         while (52 - cardsPerPlayer*playerList.size() <= minOutCards) {
             cardsPerPlayer--;
         }
+        int cursor = 0;
         for (int i=0;i<playerList.size();i++) {
-            Player player = playerList.get(i);
+            long hand = 0L;
             for (int j=0;j<cardsPerPlayer;j++) {
-                player.addCard(cardDeck.remove(0));
+                hand |= 1L << order[cursor++];
             }
+            playerList.get(i).addCards(hand);
         }
         // First player gets 2 more cards
-        playerList.get(0).addCard(cardDeck.remove(0));
-        playerList.get(0).addCard(cardDeck.remove(0));
+        playerList.get(0).addCards(1L << order[cursor++] | 1L << order[cursor++]);
+        deck = 0L;
+        while (cursor < Card.DECK_SIZE) {
+            deck |= 1L << order[cursor++];
+        }
 
         currentPlayerIndex = 0;
         roundBeginnerIndex = 0;
+        markUpdated();
+        turn++;
 
-        System.out.println("Game started: "+this);
         return true;
     }
 
     public void restartGame() {
         isStarted = false;
         isEnded = false;
-        cardDeck = null;
+        deck = 0L;
         currentPlayerIndex = 0;
         roundBeginnerIndex = 0;
         currentClaimRank = Rank.NULL;
 
-        for (Player player : playerList) {
+        for (Player player : new ArrayList<>(playerList)) {
             if (!player.isActive()) {
                 removePlayer(player.getUserId());
                 continue;
             }
             player.restart();
         }
-        System.out.println("Game restarted: "+this);
+        markUpdated();
 
     }
 
@@ -151,109 +219,110 @@ public class Room {
 
     public boolean playCards(PlayCards playCards, String userId) {
         if (!isTurn(userId)) {
-            System.out.println("It's not " + userId + "'s turn.");
             return false;
         }
         if (currentClaimRank!=Rank.NULL && !playCards.getClaimRank().equals(currentClaimRank)) {
-            System.out.println("Invalid claim rank. Current: " + currentClaimRank + ", get: " + playCards.getClaimRank());
             return false;
         }
         if (currentClaimRank==Rank.NULL) {
             currentClaimRank = playCards.getClaimRank();
             roundBeginnerIndex = currentPlayerIndex;
+            markUpdated();
         }
         Player player = playerList.get(currentPlayerIndex);
         boolean success = player.playCards(playCards.cards);
         if (!success) {
-            System.out.println("Player " + userId + " failed to play cards.");
             return false;
         }
-        System.out.println("Player " + userId + " played cards: " + playCards.cards);
-        System.out.println("Player " + userId + " has " + player.getHandCards().size() + " cards left.");
         
         roundBeginnerIndex = currentPlayerIndex;
         currentPlayerIndex = (currentPlayerIndex + 1) % playerList.size();
+        markUpdated();
 
         if (!playerList.get(currentPlayerIndex).isActive()) {
             autoPlay(playerList.get(currentPlayerIndex).getUserId());
         }
 
+        turn++;
         return true;
     }
 
     public boolean skip(String userId) {
         if (!isTurn(userId)) {
-            System.out.println("It's not " + userId + "'s turn.");
             return false;
         }
         if (currentClaimRank == Rank.NULL) {
-            System.out.println("You are beginner. Cannot skip.");
             return false;
         }
         if (currentPlayerIndex == roundBeginnerIndex) {
             Player currentPlayer = playerList.get(currentPlayerIndex);
-            if (currentPlayer.getHandCards().isEmpty()) {
+            if (currentPlayer.getHand()==0) {
                 isEnded = true;
                 winner = currentPlayer;
-                System.out.println("Player " + currentPlayer.getName() + " wins the game!");
+                markUpdated();
+                turn++;
                 return true;
             }
             currentClaimRank = Rank.NULL; // New round
-            System.out.println("New round begins.");
             for (Player player : playerList) {
-                Card.moveAllCards(player.getPlayedCards(), cardDeck);
+                deck |= player.takePlayedCards();
             }
         } else {
             currentPlayerIndex = (currentPlayerIndex + 1) % playerList.size();
         }
-        System.out.println("Player " + userId + " skipped.");
+        markUpdated();
         if (!playerList.get(currentPlayerIndex).isActive()) {
             autoPlay(playerList.get(currentPlayerIndex).getUserId());
         }
+        turn++;
         return true;
     }
 
     public boolean challenge(String userId) {
         if (!isTurn(userId)) {
-            System.out.println("It's not " + userId + "'s turn.");
             return false;
         }
         if (currentClaimRank == Rank.NULL) {
-            System.out.println("You are beginner. No claim to challenge.");
             return false;
         }
         Player lastPlayer = playerList.get((currentPlayerIndex-1+playerList.size())%playerList.size());
         Player currentPlayer = playerList.get(currentPlayerIndex);
-        for (Card card: lastPlayer.getPlayedCards()) {
-            if (!card.getRank().equals(currentClaimRank)) {
-                System.out.println("Challenge success! " + lastPlayer.getName() + " lied.");
-                System.out.println("Played: "+card.getRank()+", Claimed: "+currentClaimRank);
-                for (Player player : playerList) {
-                    Card.moveAllCards(player.getPlayedCards(),lastPlayer.getHandCards());
-                }
-                roundBeginnerIndex = currentPlayerIndex;
-                currentClaimRank = Rank.NULL;
-                return true;
-            }
-        }
-        System.out.println("Challenge failed! " + lastPlayer.getName() + " didn't lie.");
+        long lies = lastPlayer.getPlayed() & ~Card.rankMask(currentClaimRank);
+        long pile = 0L;
         for (Player player : playerList) {
-            Card.moveAllCards(player.getPlayedCards(),currentPlayer.getHandCards());
+            pile |= player.takePlayedCards();
         }
+        if (lies!=0) {
+            lastPlayer.addCards(pile);
+            roundBeginnerIndex = currentPlayerIndex;
+            currentClaimRank = Rank.NULL;
+            markUpdated();
+            turn++;
+            return true;
+        }
+        currentPlayer.addCards(pile);
         currentPlayerIndex = (currentPlayerIndex-1+playerList.size())%playerList.size();
         roundBeginnerIndex = currentPlayerIndex;
         currentClaimRank = Rank.NULL;
+        markUpdated();
 
         if (!playerList.get(currentPlayerIndex).isActive()) {
             autoPlay(playerList.get(currentPlayerIndex).getUserId());
         }
+        turn++;
         return true;
     }
 
 
     public boolean autoPlay(String userId) {
+        long start = Trace.start();
+        boolean success = doAutoPlay(userId);
+        Trace.record(this, TraceOp.AUTO_PLAY, userId, start, success);
+        return success;
+    }
+
+    private boolean doAutoPlay(String userId) {
         if (!isTurn(userId)) {
-            System.out.println("It's not " + userId + "'s turn.");
             return false;
         }
         if (canChallengeOrSkip()) {
@@ -262,20 +331,20 @@ public class Room {
         Player currentPlayer = playerList.get(currentPlayerIndex);
         
         
-        List<Card> cards=new ArrayList<>();
-        Card card=currentPlayer.getHandCards().get(0);
-        cards.add(card);
+        Card card=Card.firstOf(currentPlayer.getHand());
+        if (card==null) {
+            return false;
+        }
         if (isNewRoundBeginner()) {
-            PlayCards playCards = new PlayCards(cards, card.getRank());
+            PlayCards playCards = new PlayCards(List.of(card), card.getRank());
             return playCards(playCards, userId);
         } else {
-            List<Card> findCards=currentPlayer.getHandCards().stream()
-                .filter(c -> c.getRank().equals(currentClaimRank)).toList();
-            if (!cards.isEmpty()) {
-                PlayCards playCards = new PlayCards(findCards, currentClaimRank);
+            long findCards=currentPlayer.getHand() & Card.rankMask(currentClaimRank);
+            if (findCards!=0) {
+                PlayCards playCards = new PlayCards(Card.listOf(findCards), currentClaimRank);
                 return playCards(playCards, userId);
             } else {
-                PlayCards playCards = new PlayCards(cards, currentClaimRank);
+                PlayCards playCards = new PlayCards(List.of(card), currentClaimRank);
                 return playCards(playCards, userId);
             }
         }
@@ -323,7 +392,7 @@ public class Room {
         + "Max players: " + maxPlayers + "\n"
         + "Started: " + isStarted + "\n"
         + "Ended: " + isEnded + "\n"
-        + "Card deck: " + (cardDeck==null? "null" : cardDeck.size()) + "\n"
+        + "Card deck: " + (isStarted? Long.bitCount(deck) : "null") + "\n"
         + "Current player: " + currentPlayerIndex + "\n"
         + "Round beginner: " + roundBeginnerIndex + "\n"
         + "Current claim rank: " + currentClaimRank + "\n"
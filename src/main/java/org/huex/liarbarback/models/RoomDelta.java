@@ -0,0 +1,135 @@
+package org.huex.liarbarback.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.*;
+
+/**
+ * 房间增量，只包含 baseVersion 到 version 之间变化的字段。
+ * 客户端版本等于 baseVersion 时才能应用，否则应发送 RESYNC 重新获取完整快照。
+ * roundBeginner / newRoundBeginner 由 currentPlayerIndex、roundBeginnerIndex 和 currentClaimRank 推导。
+ */
+@Getter @Setter @NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RoomDelta {
+    private String roomId;
+    private long baseVersion;
+    private long version;
+    private Integer currentPlayerIndex;
+    private Integer roundBeginnerIndex;
+    private Card.Rank currentClaimRank;
+    private Boolean ended;
+    private Integer winnerIndex;
+    private Integer deckSize;
+    private List<PlayerDelta> players;
+
+    @Getter @Setter @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class PlayerDelta {
+        private int index;
+        private String name;
+        private Boolean active;
+        private Boolean ready;
+        private Boolean host;
+        private Integer handCount;
+        private Integer playedCount;
+        // 只发给玩家本人
+        private List<Card> handCards;
+        private List<Card> playedCards;
+
+        private PlayerDelta copy() {
+            PlayerDelta copy = new PlayerDelta();
+            copy.index = index;
+            copy.name = name;
+            copy.active = active;
+            copy.ready = ready;
+            copy.host = host;
+            copy.handCount = handCount;
+            copy.playedCount = playedCount;
+            return copy;
+        }
+
+        private boolean hasCardChanges() {
+            return handCount!=null || playedCount!=null;
+        }
+    }
+
+    /**
+     * 计算两个状态之间的增量，结构变化（加入、离开、开局、重开）时返回 null，需要发送完整快照
+     */
+    public static RoomDelta between(String roomId, RoomState base, RoomState current) {
+        if (!current.hasSameStructure(base)) {
+            return null;
+        }
+        RoomDelta delta = new RoomDelta();
+        delta.roomId = roomId;
+        delta.baseVersion = base.getVersion();
+        delta.version = current.getVersion();
+        delta.currentPlayerIndex = changed(base.getCurrentPlayerIndex(), current.getCurrentPlayerIndex());
+        delta.roundBeginnerIndex = changed(base.getRoundBeginnerIndex(), current.getRoundBeginnerIndex());
+        delta.currentClaimRank = changed(base.getCurrentClaimRank(), current.getCurrentClaimRank());
+        delta.ended = changed(base.isEnded(), current.isEnded());
+        delta.winnerIndex = changed(base.getWinnerIndex(), current.getWinnerIndex());
+        delta.deckSize = changed(base.getDeckSize(), current.getDeckSize());
+        delta.players = new ArrayList<>();
+        for (int i=0;i<current.getUserIds().length;i++) {
+            PlayerDelta player = new PlayerDelta();
+            player.index = i;
+            player.name = changed(base.getNames()[i], current.getNames()[i]);
+            player.active = changed(base.getActive()[i], current.getActive()[i]);
+            player.ready = changed(base.getReady()[i], current.getReady()[i]);
+            player.host = changed(base.getHost()[i], current.getHost()[i]);
+            player.handCount = base.getHands()[i]==current.getHands()[i] ? null : current.getHandCounts()[i];
+            player.playedCount = base.getPlayed()[i]==current.getPlayed()[i] ? null : current.getPlayedCounts()[i];
+            if (player.name!=null || player.active!=null || player.ready!=null || player.host!=null
+                || player.hasCardChanges()) {
+                delta.players.add(player);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * 该玩家的牌是否变化，变化时需要单独附上本人的手牌
+     */
+    public boolean hasCardChanges(int playerIndex) {
+        for (PlayerDelta player : players) {
+            if (player.index==playerIndex) return player.hasCardChanges();
+        }
+        return false;
+    }
+
+    /**
+     * 复制一份增量，并附上指定玩家本人的手牌和出牌
+     */
+    public RoomDelta withOwnCards(int playerIndex, Player owner) {
+        RoomDelta copy = new RoomDelta();
+        copy.roomId = roomId;
+        copy.baseVersion = baseVersion;
+        copy.version = version;
+        copy.currentPlayerIndex = currentPlayerIndex;
+        copy.roundBeginnerIndex = roundBeginnerIndex;
+        copy.currentClaimRank = currentClaimRank;
+        copy.ended = ended;
+        copy.winnerIndex = winnerIndex;
+        copy.deckSize = deckSize;
+        copy.players = new ArrayList<>(players.size());
+        for (PlayerDelta player : players) {
+            if (player.index==playerIndex) {
+                player = player.copy();
+                player.handCards = Card.listOf(owner.getHand());
+                player.playedCards = Card.listOf(owner.getPlayed());
+            }
+            copy.players.add(player);
+        }
+        return copy;
+    }
+
+    private static <T> T changed(T before, T after) {
+        return Objects.equals(before, after) ? null : after;
+    }
+}
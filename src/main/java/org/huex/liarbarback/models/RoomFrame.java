@@ -0,0 +1,189 @@
+package org.huex.liarbarback.models;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+// RoomFrame.java
+// 房间广播帧：公共部分每个版本只序列化一次，发送时为每个接收者拼接上自己的手牌
+// 文本和二进制两种格式都在第一次使用时生成，调用方需在 of() 之后、房间再次变化之前使用
+public class RoomFrame {
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final JsonNode hiddenCard = mapper.valueToTree(Card.of(Card.Suit.UNKNOWN, Card.Rank.NULL));
+
+  private final Room room;
+  private final long version;
+  private final String msgId;
+  private final String[] userIds;
+
+  private Text text;
+  private Binary binary;
+
+  // 文本格式的各个片段
+  private static class Text {
+    String head;
+    String tail;
+    String[] ownPlayers; // 本人视角，包含手牌
+    String[] publicPlayers; // 他人视角，手牌和出牌隐藏
+    int publicLength;
+  }
+
+  // 二进制格式的各个片段
+  private static class Binary {
+    byte[] head;
+    byte[][] ownPlayers;
+    byte[][] publicPlayers;
+    int publicLength;
+  }
+
+  private RoomFrame(Room room, long version) {
+    this.room = room;
+    this.version = version;
+    this.msgId = new Message<>(Message.MsgType.ROOM_PLAYERS_LIST, null).getMsgId();
+    List<Player> players = room.getPlayerList();
+    userIds = new String[players.size()];
+    for (int i = 0; i < userIds.length; i++) {
+      userIds[i] = players.get(i).getUserId();
+    }
+  }
+
+  /**
+   * 获取房间当前版本的广播帧，版本未变化时复用缓存
+   */
+  public static RoomFrame of(Room room) {
+    long version = room.getVersion();
+    RoomFrame frame = room.getFrame();
+    if (frame == null || frame.version != version) {
+      frame = new RoomFrame(room, version);
+      room.setFrame(frame);
+    }
+    return frame;
+  }
+
+  public String getRoomId() {
+    return room.getId();
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public String getMsgId() {
+    return msgId;
+  }
+
+  /**
+   * 给指定用户的文本帧，不在房间内的用户只能看到公共部分
+   */
+  public String forUser(String userId) {
+    Text text = text();
+    int index = indexOf(userId);
+    StringBuilder sb = new StringBuilder(text.publicLength + (index < 0 ? 0 : text.ownPlayers[index].length()));
+    sb.append(text.head);
+    for (int i = 0; i < text.publicPlayers.length; i++) {
+      if (i > 0) sb.append(',');
+      sb.append(i == index ? text.ownPlayers[i] : text.publicPlayers[i]);
+    }
+    return sb.append(text.tail).toString();
+  }
+
+  /**
+   * 给指定用户的二进制帧
+   */
+  public ByteBuffer forUserBinary(String userId) {
+    Binary binary = binary();
+    int index = indexOf(userId);
+    ByteBuffer buffer = ByteBuffer.allocate(binary.publicLength + (index < 0 ? 0 : binary.ownPlayers[index].length));
+    buffer.put(binary.head);
+    for (int i = 0; i < binary.publicPlayers.length; i++) {
+      buffer.put(i == index ? binary.ownPlayers[i] : binary.publicPlayers[i]);
+    }
+    return buffer.flip();
+  }
+
+  private int indexOf(String userId) {
+    for (int i = 0; i < userIds.length; i++) {
+      if (userIds[i].equals(userId)) return i;
+    }
+    return -1;
+  }
+
+  private synchronized Text text() {
+    if (text != null) return text;
+    Text text = new Text();
+    try {
+      ObjectNode data = mapper.valueToTree(room);
+      JsonNode players = data.remove("playerList");
+      hideCards(data, "cardDeck");
+      if (data.get("winner") instanceof ObjectNode winner) {
+        hideCards(winner, "handCards");
+        hideCards(winner, "playedCards");
+      }
+
+      int count = players instanceof ArrayNode ? players.size() : 0;
+      text.ownPlayers = new String[count];
+      text.publicPlayers = new String[count];
+      int length = 0;
+      for (int i = 0; i < count; i++) {
+        ObjectNode player = (ObjectNode) players.get(i);
+        text.ownPlayers[i] = mapper.writeValueAsString(player);
+        hideCards(player, "handCards");
+        hideCards(player, "playedCards");
+        text.publicPlayers[i] = mapper.writeValueAsString(player);
+        length += text.publicPlayers[i].length() + 1;
+      }
+
+      String body = mapper.writeValueAsString(data);
+      text.head = "{\"msgId\":" + mapper.writeValueAsString(msgId)
+          + ",\"msgType\":" + mapper.writeValueAsString(Message.MsgType.ROOM_PLAYERS_LIST)
+          + ",\"data\":" + body.substring(0, body.length() - 1)
+          + (data.isEmpty() ? "" : ",") + "\"playerList\":[";
+      text.tail = "]}}";
+      text.publicLength = text.head.length() + length + text.tail.length();
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("序列化失败", e);
+    }
+    return this.text = text;
+  }
+
+  private synchronized Binary binary() {
+    if (binary != null) return binary;
+    Binary binary = new Binary();
+    BinaryWriter writer = new BinaryWriter(128);
+    MessageBinaryEncoder.writeHeader(writer, Message.MsgType.ROOM_PLAYERS_LIST, msgId);
+    writer.writeByte(1);
+    MessageBinaryEncoder.writeRoomHead(writer, room);
+    binary.head = writer.toByteArray();
+
+    List<Player> players = room.getPlayerList();
+    binary.ownPlayers = new byte[players.size()][];
+    binary.publicPlayers = new byte[players.size()][];
+    int length = binary.head.length;
+    for (int i = 0; i < players.size(); i++) {
+      BinaryWriter own = new BinaryWriter();
+      MessageBinaryEncoder.writePlayer(own, players.get(i), true);
+      binary.ownPlayers[i] = own.toByteArray();
+      BinaryWriter hidden = new BinaryWriter();
+      MessageBinaryEncoder.writePlayer(hidden, players.get(i), false);
+      binary.publicPlayers[i] = hidden.toByteArray();
+      length += binary.publicPlayers[i].length;
+    }
+    binary.publicLength = length;
+    return this.binary = binary;
+  }
+
+  private static void hideCards(ObjectNode node, String field) {
+    JsonNode cards = node.get(field);
+    if (!(cards instanceof ArrayNode)) return;
+    ArrayNode hidden = mapper.createArrayNode();
+    for (int i = 0; i < cards.size(); i++) {
+      hidden.add(hiddenCard);
+    }
+    node.set(field, hidden);
+  }
+}
@@ -0,0 +1,74 @@
+package org.huex.liarbarback.models;
+
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.*;
+
+// 房间在某个版本下对客户端可见状态的紧凑快照，用于计算增量
+@Getter
+public class RoomState {
+    private final long version;
+    private final boolean isStarted;
+    private final boolean isEnded;
+    private final int currentPlayerIndex;
+    private final int roundBeginnerIndex;
+    private final Card.Rank currentClaimRank;
+    private final int deckSize;
+    private final int winnerIndex;
+
+    private final String[] userIds;
+    private final String[] names;
+    private final boolean[] active;
+    private final boolean[] ready;
+    private final boolean[] host;
+    private final int[] handCounts;
+    private final int[] playedCounts;
+    // 手牌和出牌的位掩码，数量不变但牌变化时也能发现
+    private final long[] hands;
+    private final long[] played;
+
+    public RoomState(Room room) {
+        List<Player> players = room.getPlayerList();
+        int n = players.size();
+        version = room.getVersion();
+        isStarted = room.isStarted();
+        isEnded = room.isEnded();
+        currentPlayerIndex = room.getCurrentPlayerIndex();
+        roundBeginnerIndex = room.getRoundBeginnerIndex();
+        currentClaimRank = room.getCurrentClaimRank();
+        deckSize = Long.bitCount(room.getDeck());
+        winnerIndex = room.getWinner()==null ? -1 : players.indexOf(room.getWinner());
+
+        userIds = new String[n];
+        names = new String[n];
+        active = new boolean[n];
+        ready = new boolean[n];
+        host = new boolean[n];
+        handCounts = new int[n];
+        playedCounts = new int[n];
+        hands = new long[n];
+        played = new long[n];
+        for (int i=0;i<n;i++) {
+            Player player = players.get(i);
+            userIds[i] = player.getUserId();
+            names[i] = player.getName();
+            active[i] = player.isActive();
+            ready[i] = player.isReady();
+            host[i] = player.isHost();
+            hands[i] = player.getHand();
+            played[i] = player.getPlayed();
+            handCounts[i] = player.getHandCount();
+            playedCounts[i] = player.getPlayedCount();
+        }
+    }
+
+    /**
+     * 玩家列表和开局状态都相同时才能用增量表示
+     */
+    public boolean hasSameStructure(RoomState other) {
+        return other!=null
+            && isStarted==other.isStarted
+            && Arrays.equals(userIds, other.userIds);
+    }
+}
@@ -0,0 +1,25 @@
+package org.huex.liarbarback.spectators;
+
+import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.models.RoomFrame;
+
+/**
+ * 房间某个版本的公共视角（不含任何人的手牌），每个版本只编码一次，所有观众共用同一份字节。
+ * 只编码有观众使用的格式，另一种格式为 null
+ */
+public record SharedFrame(String roomId, long version, String text, byte[] binary) {
+
+    /**
+     * 在房间邮箱中调用，编码房间的当前状态
+     */
+    public static SharedFrame of(Room room, boolean text, boolean binary) {
+        RoomFrame frame = RoomFrame.of(room);
+        return new SharedFrame(room.getId(), frame.getVersion(),
+            text ? frame.forUser(null) : null,
+            binary ? frame.forUserBinary(null).array() : null);
+    }
+
+    public boolean covers(long version, boolean text, boolean binary) {
+        return this.version == version && (!text || this.text != null) && (!binary || this.binary != null);
+    }
+}
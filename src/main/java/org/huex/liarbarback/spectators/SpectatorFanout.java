@@ -0,0 +1,231 @@
+package org.huex.liarbarback.spectators;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.huex.liarbarback.WireFormat;
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.models.EncodedMessage;
+import org.huex.liarbarback.models.Message;
+import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.transport.ClientChannel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 观众模式：观众只收到房间的公共视角，不占座位，可以远多于 maxPlayers。
+ *
+ * 房间每次广播后在邮箱中把当前状态编码成一份 SharedFrame（和观众人数无关），之后的发送全部交给扇出线程池，
+ * 观众多时分块并行入队，房间邮箱不会因为观众而变慢。同一房间同时只有一轮扇出，扇出跟不上时只发最新的一帧；
+ * 设置 min-interval-ms 后同一房间两次编码之间至少间隔这么久，间隔内的变化在间隔结束后合并成一帧发出
+ */
+@Component
+public class SpectatorFanout {
+    @Autowired private SessionManager sessionManager;
+    @Autowired private RoomManager roomManager;
+    @Autowired private TimingWheel timingWheel;
+
+    @Value("${liarbar.spectators.max-per-room:5000}") private int maxPerRoom;
+    @Value("${liarbar.spectators.threads:0}") private int threads;
+    @Value("${liarbar.spectators.chunk-size:256}") private int chunkSize;
+    @Value("${liarbar.spectators.min-interval-ms:0}") private long minIntervalMillis;
+
+    // 每个观众连接正在观看的房间
+    private final Map<ClientChannel, Room> watching = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(count, r -> {
+            Thread thread = new Thread(r, "spectator-fanout-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 开始观看房间并立即发送当前状态，已经在观看其他房间时先离开。观众已满时返回 false。必须在房间邮箱中调用
+     */
+    public boolean watch(Room room, ClientChannel session) {
+        Spectators spectators = room.getSpectators();
+        if (spectators.size() >= maxPerRoom) return false;
+        Room previous = watching.put(session, room);
+        if (previous != null && previous != room) {
+            previous.getSpectators().remove(session);
+        }
+        Spectators.Watcher watcher = spectators.add(session, WireFormat.of(session));
+        if (!session.isOpen()) {
+            // 加入前连接已经关闭，关闭时的 unwatch 可能已经执行过了
+            unwatch(session);
+            return true;
+        }
+        send(watcher, frame(room, spectators));
+        return true;
+    }
+
+    /**
+     * 停止观看，连接关闭时调用。不在观看任何房间时返回 false
+     */
+    public boolean unwatch(ClientChannel session) {
+        Room room = watching.remove(session);
+        return room != null && room.getSpectators().remove(session);
+    }
+
+    /**
+     * 房间广播之后在邮箱中调用，编码当前状态并交给扇出线程
+     */
+    public void publish(Room room) {
+        Spectators spectators = room.getSpectators();
+        if (spectators.isEmpty()) return;
+        if (minIntervalMillis > 0) {
+            long now = System.nanoTime();
+            long wait = spectators.nextPublishAt - now;
+            if (spectators.deferred || (spectators.limiting && wait > 0)) {
+                limited.increment();
+                if (!spectators.deferred) {
+                    spectators.deferred = true;
+                    timingWheel.schedule(() -> roomManager.submit(room, () -> {
+                        spectators.deferred = false;
+                        publish(room);
+                        return true;
+                    }), Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)), TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            spectators.limiting = true;
+            spectators.nextPublishAt = now + TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        }
+        spectators.pending.set(frame(room, spectators));
+        if (spectators.delivering.compareAndSet(false, true)) {
+            execute(spectators, () -> deliver(spectators));
+        }
+    }
+
+    /**
+     * 房间删除时在邮箱中调用，通知所有观众
+     */
+    public void close(Room room) {
+        Spectators spectators = room.getSpectators();
+        if (spectators.isEmpty()) return;
+        Spectators.Watcher[] watchers = spectators.snapshot();
+        spectators.clear();
+        EncodedMessage closed = new EncodedMessage(new Message<>(Message.MsgType.ROOM_NOT_FOUND, "Room closed"));
+        execute(spectators, () -> {
+            for (Spectators.Watcher watcher : watchers) {
+                watching.remove(watcher.session, room);
+                sessionManager.send(watcher.session, closed);
+            }
+        });
+    }
+
+    /**
+     * 当前版本的公共帧，已经编码过时复用
+     */
+    private SharedFrame frame(Room room, Spectators spectators) {
+        boolean text = spectators.hasText();
+        boolean binary = spectators.hasBinary();
+        SharedFrame frame = spectators.latest;
+        if (frame == null || !frame.covers(room.getVersion(), text, binary)) {
+            frame = SharedFrame.of(room, text, binary);
+            spectators.latest = frame;
+            encoded.increment();
+        }
+        return frame;
+    }
+
+    /**
+     * 在扇出线程中发送待发的帧，直到没有新的帧。观众多于 chunkSize 时分块并行发送，最后完成的一块接着发下一帧
+     */
+    private void deliver(Spectators spectators) {
+        while (true) {
+            SharedFrame frame = spectators.pending.getAndSet(null);
+            if (frame == null) {
+                spectators.delivering.set(false);
+                // 放下标记之前可能又来了新的帧
+                if (spectators.pending.get() == null || !spectators.delivering.compareAndSet(false, true)) return;
+                continue;
+            }
+            Spectators.Watcher[] watchers = spectators.snapshot();
+            if (watchers.length <= chunkSize) {
+                sendAll(watchers, 0, watchers.length, frame);
+                continue;
+            }
+            int chunks = (watchers.length + chunkSize - 1) / chunkSize;
+            AtomicInteger remaining = new AtomicInteger(chunks);
+            for (int c = 0; c < chunks; c++) {
+                int from = c * chunkSize;
+                int to = Math.min(watchers.length, from + chunkSize);
+                execute(spectators, () -> {
+                    sendAll(watchers, from, to, frame);
+                    if (remaining.decrementAndGet() == 0) deliver(spectators);
+                });
+            }
+            return;
+        }
+    }
+
+    private void sendAll(Spectators.Watcher[] watchers, int from, int to, SharedFrame frame) {
+        for (int i = from; i < to; i++) {
+            send(watchers[i], frame);
+        }
+    }
+
+    private void send(Spectators.Watcher watcher, SharedFrame frame) {
+        // 加入时单独发送的帧可能比正在扇出的帧新，只发比上次新的版本
+        synchronized (watcher) {
+            if (watcher.version >= frame.version()) return;
+            if ((watcher.format == WireFormat.BINARY ? frame.binary() : frame.text()) == null) return;
+            watcher.version = frame.version();
+            sessionManager.sendPublic(watcher.session, frame);
+        }
+        delivered.increment();
+    }
+
+    private void execute(Spectators spectators, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 停机中，不再发送
+            spectators.delivering.set(false);
+        }
+    }
+
+    public int getSpectatorCount() {
+        return watching.size();
+    }
+
+    public long getEncodedCount() {
+        return encoded.sum();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    public long getLimitedCount() {
+        return limited.sum();
+    }
+}
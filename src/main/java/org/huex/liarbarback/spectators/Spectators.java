@@ -0,0 +1,85 @@
+package org.huex.liarbarback.spectators;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.huex.liarbarback.WireFormat;
+import org.huex.liarbarback.transport.ClientChannel;
+
+
+/**
+ * 一个房间的观众，和玩家列表分开保存，不占座位，也不参与房间版本和共享存储。
+ * 加入和离开可以在任意线程进行；待发送的帧和发送状态由 SpectatorFanout 维护
+ */
+public class Spectators {
+    /**
+     * 一个观众连接，version 是最近一次发给它的帧的版本，避免旧帧覆盖新帧
+     */
+    static class Watcher {
+        final ClientChannel session;
+        final WireFormat format;
+        long version = -1;
+
+        Watcher(ClientChannel session, WireFormat format) {
+            this.session = session;
+            this.format = format;
+        }
+    }
+
+    private final Map<ClientChannel, Watcher> watchers = new ConcurrentHashMap<>();
+    private final AtomicInteger binaryCount = new AtomicInteger();
+
+    // 等待扇出的最新帧，扇出跟不上时中间的版本直接被跳过
+    final AtomicReference<SharedFrame> pending = new AtomicReference<>();
+    // 同一个房间同时只有一轮扇出，保证观众按版本顺序收到
+    final AtomicBoolean delivering = new AtomicBoolean();
+
+    // 以下只在房间邮箱中访问
+    SharedFrame latest; // 最近编码的帧，新观众加入时复用
+    boolean limiting; // 限速已经开始计时，nextPublishAt 有效
+    long nextPublishAt; // 限速时下一次允许编码的 System.nanoTime()
+    boolean deferred; // 已经安排了限速结束后的发布
+
+    Watcher add(ClientChannel session, WireFormat format) {
+        Watcher watcher = new Watcher(session, format);
+        Watcher previous = watchers.put(session, watcher);
+        if (previous != null && previous.format == WireFormat.BINARY) binaryCount.decrementAndGet();
+        if (format == WireFormat.BINARY) binaryCount.incrementAndGet();
+        return watcher;
+    }
+
+    boolean remove(ClientChannel session) {
+        Watcher watcher = watchers.remove(session);
+        if (watcher == null) return false;
+        if (watcher.format == WireFormat.BINARY) binaryCount.decrementAndGet();
+        return true;
+    }
+
+    Watcher[] snapshot() {
+        return watchers.values().toArray(new Watcher[0]);
+    }
+
+    void clear() {
+        watchers.clear();
+        binaryCount.set(0);
+    }
+
+    public int size() {
+        return watchers.size();
+    }
+
+    public boolean isEmpty() {
+        return watchers.isEmpty();
+    }
+
+    boolean hasText() {
+        return watchers.size() > binaryCount.get();
+    }
+
+    boolean hasBinary() {
+        return binaryCount.get() > 0;
+    }
+}
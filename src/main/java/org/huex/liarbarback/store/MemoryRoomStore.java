@@ -0,0 +1,63 @@
+package org.huex.liarbarback.store;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 单机部署的默认存储，数据只在本进程内可见。isShared() 为 false，RoomSync 不会向它同步房间
+ */
+public class MemoryRoomStore implements RoomStore {
+    private record Entry(long version, byte[] data) {
+    }
+
+    private final Map<String, Entry> rooms = new ConcurrentHashMap<>();
+    private final List<Consumer<RoomChange>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    @Override
+    public Optional<byte[]> load(String roomId) {
+        Entry entry = rooms.get(roomId);
+        return entry == null ? Optional.empty() : Optional.of(entry.data());
+    }
+
+    @Override
+    public boolean contains(String roomId) {
+        return rooms.containsKey(roomId);
+    }
+
+    @Override
+    public boolean save(String roomId, long expectedVersion, long version, byte[] data) {
+        boolean[] saved = {false};
+        rooms.compute(roomId, (id, entry) -> {
+            long current = entry == null ? -1 : entry.version();
+            if (current != expectedVersion) return entry;
+            saved[0] = true;
+            return new Entry(version, data);
+        });
+        return saved[0];
+    }
+
+    @Override
+    public boolean delete(String roomId, long expectedVersion) {
+        Entry entry = rooms.get(roomId);
+        return entry != null && entry.version() == expectedVersion && rooms.remove(roomId, entry);
+    }
+
+    @Override
+    public void publish(RoomChange change) {
+        listeners.forEach(listener -> listener.accept(change));
+    }
+
+    @Override
+    public void subscribe(Consumer<RoomChange> listener) {
+        listeners.add(listener);
+    }
+}
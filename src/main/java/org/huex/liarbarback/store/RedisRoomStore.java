@@ -0,0 +1,117 @@
+package org.huex.liarbarback.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 多节点共享的存储。每个房间一个哈希 liarbar:room:{id}，字段 v 是版本、d 是 RoomCodec 编码的数据，
+ * 比较版本和写入在同一个 Lua 脚本里完成。每次写入刷新过期时间，所有节点都不再访问的房间由 Redis 清理。
+ * 变化通过 liarbar:rooms 频道广播给所有节点
+ */
+public class RedisRoomStore implements RoomStore {
+    private static final String KEY_PREFIX = "liarbar:room:";
+    private static final ChannelTopic CHANNEL = new ChannelTopic("liarbar:rooms");
+
+    private static final RedisScript<Long> SAVE = RedisScript.of("""
+        local v = redis.call('HGET', KEYS[1], 'v')
+        if (v or '-1') ~= ARGV[1] then
+            return 0
+        end
+        redis.call('HSET', KEYS[1], 'v', ARGV[2], 'd', ARGV[3])
+        redis.call('PEXPIRE', KEYS[1], ARGV[4])
+        return 1
+        """, Long.class);
+    private static final RedisScript<Long> DELETE = RedisScript.of("""
+        if redis.call('HGET', KEYS[1], 'v') ~= ARGV[1] then
+            return 0
+        end
+        return redis.call('DEL', KEYS[1])
+        """, Long.class);
+
+    private final RedisTemplate<String, byte[]> redis;
+    private final RedisMessageListenerContainer listeners;
+    private final long ttlMillis;
+
+    public RedisRoomStore(RedisConnectionFactory connectionFactory, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        redis = new RedisTemplate<>();
+        redis.setConnectionFactory(connectionFactory);
+        redis.setKeySerializer(RedisSerializer.string());
+        redis.setValueSerializer(RedisSerializer.byteArray());
+        redis.setHashKeySerializer(RedisSerializer.string());
+        redis.setHashValueSerializer(RedisSerializer.byteArray());
+        redis.afterPropertiesSet();
+        listeners = new RedisMessageListenerContainer();
+        listeners.setConnectionFactory(connectionFactory);
+        listeners.afterPropertiesSet();
+        listeners.start();
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public Optional<byte[]> load(String roomId) {
+        return Optional.ofNullable(redis.<String, byte[]>opsForHash().get(KEY_PREFIX + roomId, "d"));
+    }
+
+    @Override
+    public boolean contains(String roomId) {
+        return Boolean.TRUE.equals(redis.hasKey(KEY_PREFIX + roomId));
+    }
+
+    @Override
+    public boolean save(String roomId, long expectedVersion, long version, byte[] data) {
+        Long saved = redis.execute(SAVE, List.of(KEY_PREFIX + roomId),
+            ascii(expectedVersion), ascii(version), data, ascii(ttlMillis));
+        return saved != null && saved == 1;
+    }
+
+    @Override
+    public boolean delete(String roomId, long expectedVersion) {
+        Long deleted = redis.execute(DELETE, List.of(KEY_PREFIX + roomId), ascii(expectedVersion));
+        return deleted != null && deleted == 1;
+    }
+
+    @Override
+    public void publish(RoomChange change) {
+        String payload = change.nodeId() + " " + change.roomId() + " " + change.version();
+        redis.convertAndSend(CHANNEL.getTopic(), ascii(payload));
+    }
+
+    @Override
+    public void subscribe(Consumer<RoomChange> listener) {
+        listeners.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.US_ASCII).split(" ");
+            if (parts.length != 3) {
+                System.err.println("Malformed room change: " + String.join(" ", parts));
+                return;
+            }
+            listener.accept(new RoomChange(parts[0], parts[1], Long.parseLong(parts[2])));
+        }, CHANNEL);
+    }
+
+    private static byte[] ascii(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() {
+        try {
+            listeners.destroy();
+        } catch (Exception e) {
+            System.err.println("Error stopping Redis listener: " + e.getMessage());
+        }
+    }
+}
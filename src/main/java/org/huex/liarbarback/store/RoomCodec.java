@@ -0,0 +1,89 @@
+package org.huex.liarbarback.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.huex.liarbarback.models.BinaryReader;
+import org.huex.liarbarback.models.BinaryWriter;
+import org.huex.liarbarback.models.Card;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+
+/**
+ * 房间和玩家的存储格式，整数用 varint，手牌和牌堆直接存位掩码，8 人房间不到 200 字节。
+ * 只保存对局状态；邮箱、广播缓存、计时器等节点本地的字段在读取时重新创建
+ */
+public final class RoomCodec {
+    private static final int FORMAT = 1;
+
+    private static final int STARTED = 1, ENDED = 2;
+    private static final int ACTIVE = 1, READY = 2, HOST = 4;
+
+    private RoomCodec() {
+    }
+
+    public static byte[] encode(Room room) {
+        List<Player> players = room.getPlayerList();
+        BinaryWriter writer = new BinaryWriter(32 + players.size() * 32);
+        writer.writeByte(FORMAT)
+            .writeString(room.getId())
+            .writeVarint(room.getVersion())
+            .writeVarint(room.getTurn())
+            .writeVarint(room.getMaxPlayers())
+            .writeByte((room.isStarted() ? STARTED : 0) | (room.isEnded() ? ENDED : 0))
+            .writeVarint(room.getDeck())
+            .writeZigZag(room.getSeed())
+            .writeZigZag(room.getCurrentPlayerIndex())
+            .writeZigZag(room.getRoundBeginnerIndex())
+            .writeByte(room.getCurrentClaimRank().ordinal())
+            .writeZigZag(players.indexOf(room.getWinner()))
+            .writeVarint(players.size());
+        for (Player player : players) {
+            writer.writeString(player.getUserId())
+                .writeString(player.getName())
+                .writeByte((player.isActive() ? ACTIVE : 0) | (player.isReady() ? READY : 0) | (player.isHost() ? HOST : 0))
+                .writeVarint(player.getHand())
+                .writeVarint(player.getPlayed());
+        }
+        return writer.toByteArray();
+    }
+
+    public static Room decode(byte[] data) {
+        BinaryReader reader = new BinaryReader(ByteBuffer.wrap(data));
+        int format = reader.readByte();
+        if (format != FORMAT) {
+            throw new IllegalArgumentException("Unknown room format: " + format);
+        }
+        Room room = new Room(reader.readString());
+        room.setVersion(reader.readVarint());
+        room.setTurn(reader.readVarint());
+        room.setMaxPlayers((int) reader.readVarint());
+        int flags = reader.readByte();
+        room.setStarted((flags & STARTED) != 0);
+        room.setEnded((flags & ENDED) != 0);
+        room.setDeck(reader.readVarint());
+        room.setSeed(reader.readZigZag());
+        room.setCurrentPlayerIndex((int) reader.readZigZag());
+        room.setRoundBeginnerIndex((int) reader.readZigZag());
+        room.setCurrentClaimRank(Card.Rank.values()[reader.readByte()]);
+        int winner = (int) reader.readZigZag();
+        int count = (int) reader.readVarint();
+        List<Player> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Player player = new Player(reader.readString());
+            player.setName(reader.readString());
+            int playerFlags = reader.readByte();
+            player.setActive((playerFlags & ACTIVE) != 0);
+            player.setReady((playerFlags & READY) != 0);
+            player.setHost((playerFlags & HOST) != 0);
+            player.setHand(reader.readVarint());
+            player.setPlayed(reader.readVarint());
+            player.setRoomId(room.getId());
+            players.add(player);
+        }
+        room.setPlayerList(players);
+        room.setWinner(winner < 0 ? null : players.get(winner));
+        return room;
+    }
+}
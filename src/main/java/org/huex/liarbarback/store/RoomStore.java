@@ -0,0 +1,49 @@
+package org.huex.liarbarback.store;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * 房间状态的存储，保存 RoomCodec 编码后的房间，按 Room.version 做乐观并发控制。
+ *
+ * 共享的存储（Redis）让多个节点看到同一批房间：节点修改房间后写入存储并发布 RoomChange，
+ * 其他持有该房间的节点收到后重新读取，再推送给自己的连接。见 RoomSync
+ */
+public interface RoomStore extends AutoCloseable {
+
+    /**
+     * 房间的一次变化，version 为 -1 表示房间已删除
+     */
+    record RoomChange(String nodeId, String roomId, long version) {
+    }
+
+    /**
+     * 是否在节点之间共享。不共享时房间只存在于本节点的 RoomManager 中，RoomSync 不做同步
+     */
+    boolean isShared();
+
+    Optional<byte[]> load(String roomId);
+
+    boolean contains(String roomId);
+
+    /**
+     * 存储中的版本等于 expectedVersion 时写入（-1 表示房间还不存在），否则返回 false
+     */
+    boolean save(String roomId, long expectedVersion, long version, byte[] data);
+
+    /**
+     * 存储中的版本等于 expectedVersion 时删除，否则返回 false
+     */
+    boolean delete(String roomId, long expectedVersion);
+
+    void publish(RoomChange change);
+
+    /**
+     * 订阅所有节点（包括自己）发布的变化，在存储的通知线程上回调
+     */
+    void subscribe(Consumer<RoomChange> listener);
+
+    @Override
+    default void close() {
+    }
+}
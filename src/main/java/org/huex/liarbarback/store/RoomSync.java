@@ -0,0 +1,285 @@
+package org.huex.liarbarback.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.huex.liarbarback.NodeConfig;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.Reaper;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.models.MsgIds;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 在共享存储和本节点的房间之间同步。每个节点在内存中保留自己用到的房间副本，仍然在房间邮箱中修改：
+ * 刷新房间时把本地修改写入存储（按 storedVersion 比较版本）并通知其他节点；收到其他节点的通知时
+ * 重新读取房间，标记为脏后推送给本节点的连接。每个节点只给自己的连接发送消息。
+ *
+ * 写入时版本冲突说明其他节点先修改了房间：处理玩家消息时读取新的状态后重新处理这条消息，
+ * 每次尝试的回复和本节点的副作用（玩家登记、连接绑定、标记为脏等）通过 afterSave 缓存，写入成功后才执行，
+ * 重新处理不会重复回复，放弃时也不会留下一半的副作用。其他修改在刷新时写入，冲突时丢弃。存储不共享时不做任何同步
+ */
+@Component
+public class RoomSync {
+    private static final int MAX_RETRIES = 3;
+
+    @Autowired private RoomStore store;
+    @Autowired private RoomManager roomManager;
+    @Autowired private PlayerManager playerManager;
+    @Autowired private RoomUpdateBus roomUpdates;
+    @Autowired private Reaper reaper;
+    @Autowired private GameJournal journal = GameJournal.disabled();
+
+    @Autowired private NodeConfig node;
+
+    // 启动时换成配置的节点号
+    private String nodeId = String.valueOf(MsgIds.getNode());
+
+    // execute 当前尝试中缓存的副作用，不在 execute 中时为 null
+    private final ThreadLocal<List<Runnable>> effects = new ThreadLocal<>();
+
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    @PostConstruct
+    public void subscribe() {
+        nodeId = String.valueOf(node.getNodeId());
+        if (store.isShared()) {
+            store.subscribe(this::onChange);
+        }
+    }
+
+    /**
+     * 查找房间，本节点没有时从共享存储读取并登记
+     */
+    public Optional<Room> findRoom(String roomId) {
+        Optional<Room> local = roomManager.getRoom(roomId);
+        if (local.isPresent() || !store.isShared()) return local;
+        byte[] data = store.load(roomId).orElse(null);
+        if (data == null) return Optional.empty();
+        Room loaded = RoomCodec.decode(data);
+        loaded.setStoredVersion(loaded.getVersion());
+        Room room = roomManager.addRoom(loaded);
+        if (room == loaded) {
+            reaper.watchRoom(room);
+        }
+        return Optional.of(room);
+    }
+
+    /**
+     * 在房间邮箱中执行修改房间的命令并立即写入存储。其他节点先修改了房间时读取新的状态后重新执行，
+     * 最多重试 MAX_RETRIES 次，仍然冲突时丢弃这次修改，调用 onGiveUp 后返回 false
+     */
+    public boolean execute(Room room, BooleanSupplier command, Runnable onGiveUp) {
+        if (!store.isShared()) return command.getAsBoolean();
+        for (int attempt = 0; ; attempt++) {
+            // 这次尝试追加的操作日志和副作用先缓存，修改写入存储后才生效，冲突时和修改一起丢弃
+            List<Runnable> buffered = new ArrayList<>();
+            boolean success;
+            journal.begin();
+            effects.set(buffered);
+            try {
+                success = command.getAsBoolean();
+                if (room.getVersion() == room.getStoredVersion() || save(room)) {
+                    journal.commit();
+                } else {
+                    conflicts.increment();
+                    if (reload(room)) {
+                        buffered = null;
+                    } else {
+                        // 房间已经被其他节点删除，本节点还有人时重新创建
+                        room.setStoredVersion(-1);
+                        save(room);
+                        journal.commit();
+                    }
+                }
+            } finally {
+                journal.discard();
+                effects.remove();
+            }
+            if (buffered != null) {
+                buffered.forEach(Runnable::run);
+                return success;
+            }
+            if (attempt == MAX_RETRIES) {
+                System.err.println("Room " + room.getId() + " kept changing on other nodes, giving up after " + attempt + " retries");
+                onGiveUp.run();
+                return false;
+            }
+        }
+    }
+
+    public boolean execute(Room room, BooleanSupplier command) {
+        return execute(room, command, () -> {});
+    }
+
+    /**
+     * 在 execute 中时把本节点的副作用（回复、玩家登记、连接绑定等）缓存到修改写入存储之后执行，冲突重试时丢弃；
+     * 不在 execute 中或存储不共享时立即执行
+     */
+    public void afterSave(Runnable effect) {
+        List<Runnable> buffered = effects.get();
+        if (buffered != null) {
+            buffered.add(effect);
+        } else {
+            effect.run();
+        }
+    }
+
+    /**
+     * 刷新房间时在房间邮箱中调用，写入不经过 execute 的修改（断线、自动出牌、清理等）。
+     * 版本冲突时换成存储中的状态并给客户端发送完整快照，返回 false，由调用方重新作用本节点的修改后再写入；
+     * 被覆盖的清理重新计时
+     */
+    public boolean replicate(Room room) {
+        if (!store.isShared() || room.getVersion() == room.getStoredVersion() || save(room)) return true;
+        conflicts.increment();
+        System.err.println("Room " + room.getId() + " was modified by another node, reapplying local changes");
+        if (!reload(room)) {
+            room.setStoredVersion(-1);
+            save(room);
+            return true;
+        }
+        room.setBroadcastState(null);
+        rewatch(room);
+        return false;
+    }
+
+    private boolean save(Room room) {
+        if (!store.save(room.getId(), room.getStoredVersion(), room.getVersion(), RoomCodec.encode(room))) {
+            return false;
+        }
+        room.setStoredVersion(room.getVersion());
+        store.publish(new RoomStore.RoomChange(nodeId, room.getId(), room.getVersion()));
+        saved.increment();
+        return true;
+    }
+
+    /**
+     * 删除没人的房间前在房间邮箱中调用。存储中的房间在此期间有了新的变化时不删除，返回 false
+     */
+    public boolean remove(Room room) {
+        if (!store.isShared() || room.getStoredVersion() < 0) return true;
+        if (store.delete(room.getId(), room.getStoredVersion())) {
+            store.publish(new RoomStore.RoomChange(nodeId, room.getId(), -1));
+            return true;
+        }
+        conflicts.increment();
+        if (!reload(room)) return true;
+        room.setBroadcastState(null);
+        rewatch(room);
+        return room.getPlayerList().isEmpty();
+    }
+
+    private void onChange(RoomStore.RoomChange change) {
+        if (nodeId.equals(change.nodeId())) return;
+        Room room = roomManager.getRoom(change.roomId()).orElse(null);
+        if (room == null) return;
+        received.increment();
+        roomManager.submit(room, () -> {
+            if (change.version() >= 0 && change.version() <= room.getStoredVersion()) return false;
+            if (room.getVersion() != room.getStoredVersion()) {
+                // 本地还有没写入的修改，刷新时写入会发现冲突
+            } else if (!reload(room)) {
+                // 其他节点删除了房间，清空本地副本，由刷新时删除
+                room.getPlayerList().forEach(this::unregister);
+                room.getPlayerList().clear();
+                room.setStoredVersion(-1);
+            }
+            roomUpdates.markDirty(room);
+            return true;
+        });
+    }
+
+    /**
+     * 用存储中的状态覆盖本地副本，保留本节点已有的 Player 对象。房间不存在时返回 false
+     */
+    private boolean reload(Room room) {
+        byte[] data = store.load(room.getId()).orElse(null);
+        if (data == null) return false;
+        Room stored = RoomCodec.decode(data);
+        List<Player> players = new ArrayList<>(stored.getPlayerList().size());
+        for (Player storedPlayer : stored.getPlayerList()) {
+            Player player = room.getPlayer(storedPlayer.getUserId());
+            if (player == null) {
+                // 冲突的尝试中移出了房间、但还登记在本节点的玩家，沿用原来的对象
+                Player known = playerManager.getPlayer(storedPlayer.getUserId()).orElse(null);
+                if (known != null && room.getId().equals(known.getRoomId())) {
+                    player = known;
+                }
+            }
+            if (player == null) {
+                players.add(storedPlayer);
+                continue;
+            }
+            player.setName(storedPlayer.getName());
+            player.setActive(storedPlayer.isActive());
+            player.setReady(storedPlayer.isReady());
+            player.setHost(storedPlayer.isHost());
+            player.setHand(storedPlayer.getHand());
+            player.setPlayed(storedPlayer.getPlayed());
+            players.add(player);
+        }
+        for (Player player : room.getPlayerList()) {
+            if (!players.contains(player)) unregister(player);
+        }
+        room.setPlayerList(players);
+        room.setWinner(stored.getWinner() == null ? null : room.getPlayer(stored.getWinner().getUserId()));
+        room.setMaxPlayers(stored.getMaxPlayers());
+        room.setStarted(stored.isStarted());
+        room.setEnded(stored.isEnded());
+        room.setDeck(stored.getDeck());
+        room.setSeed(stored.getSeed());
+        room.setCurrentPlayerIndex(stored.getCurrentPlayerIndex());
+        room.setRoundBeginnerIndex(stored.getRoundBeginnerIndex());
+        room.setCurrentClaimRank(stored.getCurrentClaimRank());
+        room.setTurn(stored.getTurn());
+        room.setVersion(stored.getVersion());
+        room.setStoredVersion(stored.getVersion());
+        room.setFrame(null);
+        if (room.getBroadcastState() != null && room.getBroadcastState().getVersion() >= room.getVersion()) {
+            // 广播过本地没写入成功的版本，增量接不上
+            room.setBroadcastState(null);
+        }
+        return true;
+    }
+
+    // 冲突时被覆盖的玩家清理重新计时，断线的玩家不会一直留在房间里；房间本身的清理一直在计时，见 Reaper.checkRoom
+    private void rewatch(Room room) {
+        for (Player player : room.getPlayerList()) {
+            if (!player.isActive() && player.getIdleTimeout() == null) {
+                reaper.watchPlayer(room, player);
+            }
+        }
+    }
+
+    // 其他节点移除的玩家，如果是从本节点加入的，也从本节点移除
+    private void unregister(Player player) {
+        if (playerManager.getPlayer(player.getUserId()).orElse(null) == player) {
+            playerManager.removePlayer(player.getUserId());
+        }
+    }
+
+    public long getSavedCount() {
+        return saved.sum();
+    }
+
+    public long getConflictCount() {
+        return conflicts.sum();
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+}
@@ -0,0 +1,99 @@
+package org.huex.liarbarback.store;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 房间快照文件：文件头（魔数、格式、写入时间、房间数）之后是每个房间的 长度+操作日志序号+RoomCodec 数据，最后是 CRC32C 校验。
+ * 读写都通过内存映射，先写临时文件再原子替换，写到一半崩溃时旧快照仍然可用
+ */
+public final class SnapshotFile {
+    private static final int MAGIC = 0x4C425331; // "LBS1"
+    private static final int FORMAT = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    /**
+     * 一个房间，journalSeq 是编码时房间最近一条操作日志的 seq，恢复时只重放之后的记录
+     */
+    public record Entry(long journalSeq, byte[] room) {
+    }
+
+    public record Snapshot(long writtenAtMillis, List<Entry> rooms) {
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * 写入快照，返回文件大小
+     */
+    public static long write(Path path, List<Entry> rooms) throws IOException {
+        long size = HEADER_BYTES + 8;
+        for (Entry entry : rooms) {
+            size += 4 + 8 + entry.room().length;
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(FORMAT).putLong(System.currentTimeMillis()).putInt(rooms.size());
+            CRC32C crc = new CRC32C();
+            for (Entry entry : rooms) {
+                buffer.putInt(entry.room().length).putLong(entry.journalSeq()).put(entry.room());
+                crc.update(entry.room());
+            }
+            buffer.putLong(crc.getValue());
+            buffer.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * 读取快照，文件不完整或校验失败时抛出 IOException
+     */
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                throw new IOException("Not a room snapshot: " + path);
+            }
+            long writtenAt = buffer.getLong();
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 12) {
+                throw new IOException("Truncated room snapshot: " + path);
+            }
+            List<Entry> rooms = new ArrayList<>(count);
+            CRC32C crc = new CRC32C();
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                long journalSeq = buffer.getLong();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Truncated room snapshot: " + path);
+                }
+                byte[] room = new byte[length];
+                buffer.get(room);
+                crc.update(room);
+                rooms.add(new Entry(journalSeq, room));
+            }
+            if (buffer.getLong() != crc.getValue()) {
+                throw new IOException("Room snapshot checksum mismatch: " + path);
+            }
+            return new Snapshot(writtenAt, rooms);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated room snapshot: " + path, e);
+        }
+    }
+}
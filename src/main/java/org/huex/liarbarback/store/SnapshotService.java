@@ -0,0 +1,186 @@
+package org.huex.liarbarback.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.journal.JournalOp;
+import org.huex.liarbarback.journal.JournalReplay;
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.Reaper;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定期把所有房间（连同其中的玩家、手牌、出牌、回合和声明的点数）写入快照文件，重启时恢复，部署不会中断进行中的对局。
+ *
+ * 每个房间在自己的邮箱中编码，不需要暂停房间处理，快照中的每个房间都是一致的。
+ * 停机时在断开连接之前再写一次。开启操作日志时，恢复快照后再重放每个房间快照之后的日志，崩溃前最后的操作也能找回；
+ * 快照写入后删除已经包含在快照中的日志分段。恢复的玩家标记为断线，重新连接并加入房间后继续游戏
+ */
+@Component
+public class SnapshotService implements SmartInitializingSingleton {
+    @Autowired private RoomManager roomManager;
+    @Autowired private PlayerManager playerManager;
+    @Autowired private RoomUpdateBus roomUpdates;
+    @Autowired private Reaper reaper;
+    @Autowired private GameJournal journal;
+
+    @Value("${liarbar.snapshot.path:data/rooms.snapshot}") private String path;
+    @Value("${liarbar.snapshot.interval-ms:0}") private long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+    private final LongAdder written = new LongAdder();
+    private volatile long lastBytes;
+
+    /**
+     * 所有组件初始化完成、开始接受连接之前恢复快照
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (intervalMillis <= 0 && !journal.isEnabled()) return;
+        restore();
+        if (intervalMillis <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "room-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停机时在 Web 服务器关闭连接之前调用，连接断开后玩家会被移出未开局的房间
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void shutdown() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        snapshotQuietly();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            System.err.println("Error writing room snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入一次快照，返回写入的房间数
+     */
+    public int snapshot() throws IOException {
+        // 在编码任何房间之前取得，之前的分段中的记录都会包含在快照里
+        long segment = journal.currentSegment();
+        List<CompletableFuture<SnapshotFile.Entry>> encoded = new ArrayList<>();
+        for (Room room : roomManager.getRooms()) {
+            encoded.add(roomManager.submit(room, () ->
+                room.getPlayerList().isEmpty() || roomManager.getRoom(room.getId()).orElse(null) != room
+                    ? null : new SnapshotFile.Entry(room.getJournalSeq(), RoomCodec.encode(room))));
+        }
+        List<SnapshotFile.Entry> rooms = new ArrayList<>(encoded.size());
+        for (CompletableFuture<SnapshotFile.Entry> future : encoded) {
+            try {
+                SnapshotFile.Entry entry = future.get(5, TimeUnit.SECONDS);
+                if (entry != null) rooms.add(entry);
+            } catch (Exception e) {
+                // 缺了这个房间，日志不能删
+                System.err.println("Skipping room in snapshot: " + e.getMessage());
+                segment = 0;
+            }
+        }
+        lastBytes = SnapshotFile.write(Path.of(path), rooms);
+        written.increment();
+        journal.truncate(segment);
+        return rooms.size();
+    }
+
+    private void restore() {
+        long start = System.nanoTime();
+        Map<String, Room> rooms = new LinkedHashMap<>();
+        Map<String, Long> journalSeqs = new HashMap<>();
+        Path file = Path.of(path);
+        String age = "no snapshot";
+        if (intervalMillis > 0 && Files.exists(file)) {
+            try {
+                SnapshotFile.Snapshot snapshot = SnapshotFile.read(file);
+                for (SnapshotFile.Entry entry : snapshot.rooms()) {
+                    Room room = RoomCodec.decode(entry.room());
+                    room.setJournalSeq(entry.journalSeq());
+                    rooms.put(room.getId(), room);
+                    journalSeqs.put(room.getId(), entry.journalSeq());
+                }
+                age = "snapshot is " + (System.currentTimeMillis() - snapshot.writtenAtMillis()) / 1000 + "s old";
+            } catch (IOException e) {
+                System.err.println("Ignoring room snapshot: " + e.getMessage());
+            }
+        }
+        int replayed = 0;
+        try {
+            int[] count = {0};
+            journal.replay(record -> {
+                Long seq = journalSeqs.get(record.roomId());
+                if (seq != null && record.seq() <= seq) return;
+                JournalReplay.apply(rooms, record);
+                count[0]++;
+            });
+            replayed = count[0];
+        } catch (IOException e) {
+            System.err.println("Error replaying journal: " + e.getMessage());
+        }
+
+        int restored = 0;
+        for (Room room : rooms.values()) {
+            if (room.getPlayerList().isEmpty() || roomManager.addRoom(room) != room) continue;
+            roomManager.submit(room, () -> {
+                // 原来的连接都已断开，玩家重连后恢复
+                for (Player player : room.getPlayerList()) {
+                    playerManager.addPlayer(player);
+                    if (player.isActive()) {
+                        player.setActive(false);
+                        room.markUpdated();
+                        journal.append(room, JournalOp.DEACTIVATE, player.getUserId());
+                    }
+                    reaper.watchPlayer(room, player);
+                }
+                return true;
+            }).join();
+            reaper.watchRoom(room);
+            // 刷新时为进行中的对局重新计时
+            roomUpdates.markDirty(room);
+            restored++;
+        }
+        if (restored > 0 || replayed > 0) {
+            System.out.println("Restored " + restored + " rooms (" + age + ", " + replayed + " journal records replayed) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        }
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getLastBytes() {
+        return lastBytes;
+    }
+}
@@ -0,0 +1,39 @@
+package org.huex.liarbarback.trace;
+
+import org.huex.liarbarback.models.Room;
+
+/**
+ * 房间操作追踪。用 -Dliarbar.trace=true 开启，容量用 -Dliarbar.trace.capacity 设置。
+ * ENABLED 是编译期不可变的常量，关闭时 JIT 会把调用点整段消除。
+ */
+public final class Trace {
+    public static final boolean ENABLED = Boolean.getBoolean("liarbar.trace");
+    public static final int CAPACITY = Integer.getInteger("liarbar.trace.capacity", 256);
+
+    private Trace() {
+    }
+
+    /**
+     * 操作开始时间，关闭时不读时钟
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    public static TraceBuffer newBuffer() {
+        return ENABLED ? new TraceBuffer(CAPACITY) : null;
+    }
+
+    public static void record(Room room, TraceOp op, String userId, long start, boolean ok) {
+        if (!ENABLED || room==null || room.getTrace()==null) return;
+        room.getTrace().record(op, userId, room.getVersion(), System.nanoTime() - start, ok);
+    }
+
+    /**
+     * 出错时把房间最近的事件打印到标准错误
+     */
+    public static void dump(Room room, String reason) {
+        if (!ENABLED || room==null || room.getTrace()==null) return;
+        System.err.println("Trace of room " + room.getId() + " (" + reason + "):\n" + room.getTrace().dump());
+    }
+}
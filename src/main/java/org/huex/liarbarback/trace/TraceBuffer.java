@@ -0,0 +1,55 @@
+package org.huex.liarbarback.trace;
+
+import java.time.Instant;
+
+/**
+ * 单个房间的追踪环形缓冲，容量固定，写满后覆盖最旧的事件。
+ * 事件按列存放在预先分配的数组中，记录时不分配对象也不拼接字符串。
+ */
+public class TraceBuffer {
+    private final long[] times; // 毫秒时间戳
+    private final TraceOp[] ops;
+    private final String[] userIds;
+    private final long[] versions; // 操作完成后的房间版本
+    private final long[] durations; // 纳秒
+    private final boolean[] oks;
+    private long count;
+
+    public TraceBuffer(int capacity) {
+        times = new long[capacity];
+        ops = new TraceOp[capacity];
+        userIds = new String[capacity];
+        versions = new long[capacity];
+        durations = new long[capacity];
+        oks = new boolean[capacity];
+    }
+
+    public synchronized void record(TraceOp op, String userId, long version, long durationNanos, boolean ok) {
+        int i = (int) (count++ % times.length);
+        times[i] = System.currentTimeMillis();
+        ops[i] = op;
+        userIds[i] = userId;
+        versions[i] = version;
+        durations[i] = durationNanos;
+        oks[i] = ok;
+    }
+
+    /**
+     * 按时间顺序输出缓冲中的事件，每行一个
+     */
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        long from = Math.max(0, count - times.length);
+        for (long n = from; n < count; n++) {
+            int i = (int) (n % times.length);
+            sb.append(Instant.ofEpochMilli(times[i]))
+                .append('\t').append(ops[i])
+                .append('\t').append(userIds[i]==null ? "-" : userIds[i])
+                .append("\tv").append(versions[i])
+                .append('\t').append(durations[i] / 1000).append("us")
+                .append('\t').append(oks[i] ? "ok" : "failed")
+                .append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package org.huex.liarbarback.trace;
+
+import org.huex.liarbarback.managers.RoomManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+// 按需导出房间的追踪事件，只在开启追踪时注册
+@RestController
+@ConditionalOnExpression("T(org.huex.liarbarback.trace.Trace).ENABLED")
+public class TraceController {
+    @Autowired private RoomManager roomManager;
+
+    @GetMapping(value = "/api/trace/{roomId}", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> dump(@PathVariable String roomId) {
+        return roomManager.getRoom(roomId)
+            .filter(room -> room.getTrace()!=null)
+            .map(room -> ResponseEntity.ok(room.getTrace().dump()))
+            .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,29 @@
+package org.huex.liarbarback.trace;
+
+import org.huex.liarbarback.models.Message.MsgType;
+
+// 追踪事件的操作类型
+public enum TraceOp {
+    CREATE_ROOM, JOIN_ROOM, LEAVE_ROOM, CHANGE_NAME, GET_ROOM_PLAYERS, PREPARE, START_GAME,
+    PLAY_CARDS, SKIP, CHALLENGE, RESTART, RESYNC, SPECTATE_ROOM,
+    BROADCAST, AUTO_PLAY, DEACTIVATE, REMOVE_PLAYER, REMOVE_ROOM, OTHER;
+
+    public static TraceOp of(MsgType msgType) {
+        return switch (msgType) {
+            case CREATE_ROOM -> CREATE_ROOM;
+            case JOIN_ROOM -> JOIN_ROOM;
+            case LEAVE_ROOM -> LEAVE_ROOM;
+            case CHANGE_NAME -> CHANGE_NAME;
+            case GET_ROOM_PLAYERS -> GET_ROOM_PLAYERS;
+            case PREPARE -> PREPARE;
+            case START_GAME -> START_GAME;
+            case PLAY_CARDS -> PLAY_CARDS;
+            case SKIP -> SKIP;
+            case CHALLENGE -> CHALLENGE;
+            case RESTART -> RESTART;
+            case RESYNC -> RESYNC;
+            case SPECTATE_ROOM -> SPECTATE_ROOM;
+            default -> OTHER;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package org.huex.liarbarback.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 和传输层无关的客户端连接。JSR-356 的 Session 和 Reactor Netty 的 WebSocket 连接都包装成它，
+ * SessionManager、MsgHandler 和 Reaper 只通过它收发消息，同一个连接始终是同一个对象
+ */
+public interface ClientChannel {
+    // WebSocket 关闭码
+    int GOING_AWAY = 1001;
+    int TRY_AGAIN_LATER = 1013;
+
+    /**
+     * 连接地址中的 user_id
+     */
+    String getUserId();
+
+    /**
+     * 握手时协商的子协议，没有协商时为 null
+     */
+    String getSubprotocol();
+
+    boolean isOpen();
+
+    /**
+     * 连接级别的属性（消息格式、发送队列、空闲计时等），连接关闭后仍然可以访问
+     */
+    Map<String, Object> getAttributes();
+
+    /**
+     * 异步发送，完成后调用 callback，成功时参数为 null。调用方保证上一条完成之前不发送下一条，见 OutboundQueue
+     */
+    void sendText(String text, Consumer<Throwable> callback);
+
+    void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback);
+
+    /**
+     * 发送关闭帧并关闭连接，关闭事件照常触发。可能阻塞，不要在房间邮箱和时间轮线程上调用
+     */
+    void close(int code, String reason);
+}
@@ -0,0 +1,194 @@
+package org.huex.liarbarback.transport;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.huex.liarbarback.WireFormat;
+import org.huex.liarbarback.models.Message;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+
+/**
+ * 一个客户端连接的生命周期，两种传输共用：打开时协商格式并登记会话，收到的消息按顺序交给 MsgHandler，关闭时清理。
+ * 传输层保证同一连接的事件不会并发调用。
+ *
+ * 连接还缓存了所属的玩家和房间，玩家也反过来指向连接（Player.channel），房间广播时直接从玩家取得连接。
+ * 两边互相指向时缓存有效，处理消息不需要按 userId 查找玩家、再按 roomId 查找房间；
+ * 玩家离开房间、被移除或者用新的连接重连时 Player.channel 被清除或替换，缓存随之失效，下一条消息重新查找
+ */
+public class ClientConnection {
+    private final ClientConnections connections;
+    private final ClientChannel channel;
+    private final String userId;
+    // 同一用户的消息按顺序处理：上一条处理完成后才在 inbound 执行器上路由下一条，传输线程不等待处理
+    private CompletableFuture<Boolean> pending = CompletableFuture.completedFuture(true);
+    // 排在 pending 上还没处理完的消息数。读取线程不会因为处理慢而暂停，超过 max-pending 时直接拒绝，链不会无限增长
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private boolean rejecting; // 只在传输线程上访问
+    // 在房间邮箱中绑定，消息按顺序处理，下一条消息总能看到上一条的绑定
+    private volatile Player player;
+    private volatile Room room;
+    // 正在处理的 BATCH 中被修改和请求了快照的房间，批处理结束后统一处理，不在批处理中时为 null
+    private volatile Batch batch;
+
+    /**
+     * 批处理中推迟到结束时处理的房间：dirtyRooms 统一标记为脏，snapshotRooms 给这个连接发送一次快照
+     */
+    public record Batch(Set<Room> dirtyRooms, Set<Room> snapshotRooms) {
+        private static final Batch EMPTY = new Batch(Set.of(), Set.of());
+    }
+
+    ClientConnection(ClientConnections connections, ClientChannel channel) {
+        this.connections = connections;
+        this.channel = channel;
+        this.userId = channel.getUserId();
+    }
+
+    public ClientChannel getChannel() {
+        return channel;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * 缓存的玩家和房间是否有效
+     */
+    public boolean isBound() {
+        Player bound = player;
+        return bound != null && bound.getChannel() == channel;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    /**
+     * 确认玩家在房间中之后调用，之后房间的广播发给这个连接。同一用户已经有更新的连接时不绑定，必须在房间邮箱中调用
+     */
+    public void bind(Player player, Room room) {
+        if (!connections.sessionManager.isCurrent(userId, channel)) return;
+        this.player = player;
+        this.room = room;
+        player.setChannel(channel);
+    }
+
+    /**
+     * 玩家离开房间时调用，之后不再接收房间的广播
+     */
+    public void unbind() {
+        Player bound = player;
+        if (bound != null && bound.getChannel() == channel) {
+            bound.setChannel(null);
+        }
+        player = null;
+        room = null;
+    }
+
+    /**
+     * 开始一个批处理，之后修改的房间先记在连接上，不标记为脏，请求的快照也等批处理结束再发送
+     */
+    public void beginBatch() {
+        batch = new Batch(new LinkedHashSet<>(), new LinkedHashSet<>());
+    }
+
+    /**
+     * 在批处理中时记下房间并返回 true，调用方不再标记；批处理中的消息按顺序处理，不会并发修改
+     */
+    public boolean defer(Room room) {
+        Batch current = batch;
+        if (current == null) return false;
+        current.dirtyRooms().add(room);
+        return true;
+    }
+
+    /**
+     * 在批处理中时记下要发送快照的房间并返回 true，调用方不再发送；同一房间只发送一次
+     */
+    public boolean deferSnapshot(Room room) {
+        Batch current = batch;
+        if (current == null) return false;
+        current.snapshotRooms().add(room);
+        return true;
+    }
+
+    /**
+     * 结束批处理，返回期间推迟的房间
+     */
+    public Batch endBatch() {
+        Batch current = batch;
+        batch = null;
+        return current == null ? Batch.EMPTY : current;
+    }
+
+    void opened(String transport) {
+        WireFormat format = WireFormat.negotiate(channel);
+        connections.sessionManager.addSession(userId, channel);
+        connections.reaper.watchSession(channel);
+        System.out.println("WebSocket connection opened for user: " + userId + " format: " + format
+            + " transport: " + transport);
+        connections.sessionManager.send(channel, new Message<>(Message.MsgType.WELCOME, "Welcome to the WebSocket server!"));
+    }
+
+    /**
+     * 把消息排在同一连接的上一条消息之后处理。已经有 max-pending 条没处理完时丢弃这条消息，
+     * 每段连续的拒绝只回复一次错误，回复不会随着客户端的发送速度堆积
+     */
+    public void receive(Message<?> message) {
+        connections.reaper.touchSession(channel);
+        if (inFlight.incrementAndGet() > connections.maxPending) {
+            inFlight.decrementAndGet();
+            if (!rejecting) {
+                rejecting = true;
+                System.err.println("Too many pending messages from user " + userId + ", dropping");
+                connections.sessionManager.send(channel, new Message<>(Message.MsgType.ERROR, "Too many pending messages"));
+            }
+            return;
+        }
+        rejecting = false;
+        pending = pending
+            .exceptionally(error -> false)
+            .thenComposeAsync(previous -> connections.msgHandler.handleMsg(message, this),
+                connections.msgHandler.getInboundExecutor())
+            .whenComplete((success, error) -> inFlight.decrementAndGet());
+    }
+
+    /**
+     * 已经收到、还没处理完的消息数
+     */
+    public int getPendingCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * 解析失败不影响连接
+     */
+    public void decodeFailed(Throwable error) {
+        System.err.println("Error parsing message: " + error.getMessage());
+        connections.sessionManager.sendText(channel, "Error parsing message: " + error.getMessage());
+    }
+
+    public void closed() {
+        connections.reaper.unwatchSession(channel);
+        connections.spectatorFanout.unwatch(channel);
+        remove();
+        System.out.println("WebSocket connection closed for user: " + userId);
+    }
+
+    public void failed(Throwable error) {
+        System.err.println("WebSocket error: " + error.getMessage());
+        remove();
+    }
+
+    private void remove() {
+        pending.whenCompleteAsync((success, error) -> connections.sessionManager.removeSession(userId, channel),
+            connections.msgHandler.getInboundExecutor());
+    }
+}
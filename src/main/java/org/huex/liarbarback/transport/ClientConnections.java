@@ -0,0 +1,32 @@
+package org.huex.liarbarback.transport;
+
+import org.huex.liarbarback.MsgHandler;
+import org.huex.liarbarback.managers.Reaper;
+import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.spectators.SpectatorFanout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 创建 ClientConnection，持有连接处理需要的组件，每个连接不必各自注入
+ */
+@Component
+public class ClientConnections {
+    @Autowired SessionManager sessionManager;
+    @Autowired MsgHandler msgHandler;
+    @Autowired Reaper reaper;
+    @Autowired SpectatorFanout spectatorFanout;
+
+    // 每个连接已经收到、还没处理完的消息上限，超过时拒绝新消息
+    @Value("${liarbar.inbound.max-pending:64}") int maxPending = 64;
+
+    /**
+     * 连接握手完成后调用，登记会话并发送欢迎消息
+     */
+    public ClientConnection open(ClientChannel channel, String transport) {
+        ClientConnection connection = new ClientConnection(this, channel);
+        connection.opened(transport);
+        return connection;
+    }
+}
@@ -0,0 +1,68 @@
+package org.huex.liarbarback.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.Session;
+
+/**
+ * JSR-356 (Tomcat) 的连接。属性保存在自己的表里，会话关闭后 Tomcat 不允许再访问 getUserProperties()
+ */
+public class JsrClientChannel implements ClientChannel {
+    private final Session session;
+    private final String userId;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    public JsrClientChannel(Session session, String userId) {
+        this.session = session;
+        this.userId = userId;
+    }
+
+    @Override
+    public String getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String getSubprotocol() {
+        return session.getNegotiatedSubprotocol();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public void sendText(String text, Consumer<Throwable> callback) {
+        session.getAsyncRemote().sendText(text, handler(callback));
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) {
+        session.getAsyncRemote().sendBinary(bytes, handler(callback));
+    }
+
+    private static SendHandler handler(Consumer<Throwable> callback) {
+        return result -> callback.accept(result.isOK() ? null : result.getException());
+    }
+
+    @Override
+    public void close(int code, String reason) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.getCloseCode(code), reason));
+        } catch (IOException e) {
+            System.err.println("Error closing session for user " + userId + ": " + e.getMessage());
+        }
+    }
+}
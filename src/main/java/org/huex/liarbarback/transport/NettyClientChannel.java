@@ -0,0 +1,70 @@
+package org.huex.liarbarback.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * Reactor Netty 的 WebSocket 连接。帧直接写入 Netty 通道，写完成的监听器在事件循环上回调，不占用额外的线程
+ */
+public class NettyClientChannel implements ClientChannel {
+    private final Channel channel;
+    private final String userId;
+    private final String subprotocol;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    public NettyClientChannel(Channel channel, String userId, String subprotocol) {
+        this.channel = channel;
+        this.userId = userId;
+        this.subprotocol = subprotocol;
+    }
+
+    @Override
+    public String getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isActive();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public void sendText(String text, Consumer<Throwable> callback) {
+        complete(channel.writeAndFlush(new TextWebSocketFrame(text)), callback);
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) {
+        complete(channel.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(bytes))), callback);
+    }
+
+    private static void complete(ChannelFuture future, Consumer<Throwable> callback) {
+        future.addListener(f -> callback.accept(f.isSuccess() ? null : f.cause()));
+    }
+
+    @Override
+    public void close(int code, String reason) {
+        if (!channel.isActive()) return;
+        channel.writeAndFlush(new CloseWebSocketFrame(code, reason)).addListener(ChannelFutureListener.CLOSE);
+    }
+}
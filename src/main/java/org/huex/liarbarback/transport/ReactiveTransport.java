@@ -0,0 +1,120 @@
+package org.huex.liarbarback.transport;
+
+import java.time.Duration;
+
+import org.huex.liarbarback.WireFormat;
+import org.huex.liarbarback.models.MessageBinaryDecoder;
+import org.huex.liarbarback.models.MessageDecoder;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.DecodeException;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.WebsocketServerSpec;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * 可选的非阻塞传输：在单独的端口上用 Reactor Netty 提供同样的 /api/ws/{user_id} 协议（子协议、消息格式都相同），
+ * 和 Tomcat 上的 WebSocketServer 同时运行，共用 MsgHandler 和各个管理器。
+ *
+ * 所有连接由固定数量的事件循环线程处理，连接空闲时不占用线程，每个连接只有 Netty 通道和 ClientConnection 的开销，
+ * 适合大量空闲连接。消息的处理仍然交给 inbound 执行器，事件循环线程不会被房间逻辑阻塞
+ */
+@Component
+public class ReactiveTransport {
+    private static final MessageDecoder textDecoder = new MessageDecoder();
+    private static final MessageBinaryDecoder binaryDecoder = new MessageBinaryDecoder();
+
+    @Autowired private ClientConnections connections;
+
+    @Value("${liarbar.reactive.enabled:false}") private boolean enabled;
+    @Value("${liarbar.reactive.port:5600}") private int port;
+    @Value("${liarbar.reactive.threads:0}") private int threads;
+    @Value("${liarbar.reactive.max-frame-bytes:65536}") private int maxFrameBytes;
+
+    private LoopResources loops;
+    private DisposableServer server;
+
+    /**
+     * 所有组件就绪（快照已恢复）之后才开始接受连接
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        loops = LoopResources.create("reactive-ws", count, true);
+        // 配置了子协议时 Reactor Netty 不处理没有请求子协议的连接，而 JSR-356 端点允许不协商（默认 JSON），所以按请求选择
+        WebsocketServerSpec negotiated = WebsocketServerSpec.builder()
+            .protocols(WireFormat.BINARY_SUBPROTOCOL + "," + WireFormat.JSON_SUBPROTOCOL)
+            .maxFramePayloadLength(maxFrameBytes)
+            .build();
+        WebsocketServerSpec plain = WebsocketServerSpec.builder()
+            .maxFramePayloadLength(maxFrameBytes)
+            .build();
+        server = HttpServer.create()
+            .port(port)
+            .runOn(loops)
+            // 路径模板的变量名会成为正则的命名分组，不能带下划线
+            .route(routes -> routes.get("/api/ws/{userId}", (request, response) ->
+                response.sendWebsocket((in, out) -> handle(request.param("userId"), in, out),
+                    request.requestHeaders().contains(HttpHeaderNames.SEC_WEBSOCKET_PROTOCOL) ? negotiated : plain)))
+            .bindNow();
+        System.out.println("Reactive WebSocket transport listening on port " + server.port() + " with " + count + " threads");
+    }
+
+    private Publisher<Void> handle(String userId, WebsocketInbound in, WebsocketOutbound out) {
+        ClientConnection[] connection = new ClientConnection[1];
+        in.withConnection(c -> connection[0] = connections.open(
+            new NettyClientChannel(c.channel(), userId, in.selectedSubprotocol()), "reactive"));
+        return in.aggregateFrames(maxFrameBytes)
+            .receiveFrames()
+            .doOnNext(frame -> receive(connection[0], frame))
+            .doOnError(error -> connection[0].failed(error))
+            .doFinally(signal -> connection[0].closed())
+            .then();
+    }
+
+    /**
+     * 在连接的事件循环线程上解码，返回后帧即被释放
+     */
+    private static void receive(ClientConnection connection, WebSocketFrame frame) {
+        try {
+            if (frame instanceof TextWebSocketFrame text) {
+                connection.receive(textDecoder.decode(text.text()));
+            } else if (frame instanceof BinaryWebSocketFrame) {
+                connection.receive(binaryDecoder.decode(frame.content().nioBuffer()));
+            }
+        } catch (DecodeException e) {
+            connection.decodeFailed(e);
+        }
+    }
+
+    /**
+     * 实际监听的端口（配置为 0 时随机分配），未启用时返回 -1
+     */
+    public int getPort() {
+        return server == null ? -1 : server.port();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (server != null) {
+            server.disposeNow(Duration.ofSeconds(5));
+        }
+        if (loops != null) {
+            loops.disposeLater().block(Duration.ofSeconds(5));
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package org.huex.liarbarback;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
 
-@SpringBootTest
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability // 测试中默认不导出指标
 class LiarBarBackApplicationTests {
+    @Autowired private TestRestTemplate restTemplate;
 
     @Test
     void contextLoads() {
     }
 
+    @Test
+    void exposesGameMetrics() {
+        String body = restTemplate.getForObject("/actuator/prometheus", String.class);
+        assertTrue(body.contains("liarbar_sessions"));
+        assertTrue(body.contains("liarbar_games_started"));
+    }
+
 }
@@ -0,0 +1,101 @@
+package org.huex.liarbarback;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MsgHandlerTests {
+    @LocalServerPort private int port;
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private WebSocket connect(String userId) throws Exception {
+        WebSocket socket = HttpClient.newHttpClient().newWebSocketBuilder()
+            .buildAsync(URI.create("ws://localhost:" + port + "/api/ws/" + userId), new WebSocket.Listener() {
+                @Override
+                public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                    received.add(data.toString());
+                    webSocket.request(1);
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+        assertTrue(received.poll(10, TimeUnit.SECONDS).contains("Welcome"));
+        return socket;
+    }
+
+    @Test
+    void resyncSendsSnapshotOnlyOnVersionGap() throws Exception {
+        WebSocket socket = connect("resync-host");
+        socket.sendText("{\"msgType\":0}", true).join();
+        JsonNode room = mapper.readTree(received.poll(10, TimeUnit.SECONDS)).get("data");
+        long version = room.get("version").asLong();
+
+        socket.sendText("{\"msgType\":35,\"data\":" + version + "}", true).join();
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+
+        socket.sendText("{\"msgType\":35,\"data\":" + (version - 1) + "}", true).join();
+        JsonNode snapshot = mapper.readTree(received.poll(10, TimeUnit.SECONDS));
+        assertEquals(17, snapshot.get("msgType").asInt());
+        assertEquals(version, snapshot.get("data").get("version").asLong());
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+
+    @Test
+    void batchRepliesOnceAndBroadcastsOnce() throws Exception {
+        WebSocket socket = connect("batch-host");
+
+        // CREATE_ROOM, CHANGE_NAME, PREPARE 和一条房间不存在的 JOIN_ROOM
+        socket.sendText("{\"msgType\":38,\"data\":[{\"msgType\":0},{\"msgType\":3,\"data\":\"Alice\"},"
+            + "{\"msgType\":5,\"data\":true},{\"msgType\":1,\"data\":\"000000\"}]}", true).join();
+        assertTrue(received.poll(10, TimeUnit.SECONDS).contains("Room not found"));
+        String result = received.poll(10, TimeUnit.SECONDS);
+        assertTrue(result.contains("\"msgType\":39"), result);
+        assertTrue(result.contains("[true,true,true,false]"), result);
+        String room = received.poll(10, TimeUnit.SECONDS);
+        assertTrue(room.contains("\"name\":\"Alice\"") && room.contains("\"ready\":true"), room);
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+
+    @Test
+    void batchSendsRequestedSnapshotOnceAfterResult() throws Exception {
+        WebSocket socket = connect("snapshot-host");
+        socket.sendText("{\"msgType\":0}", true).join();
+        String roomId = mapper.readTree(received.poll(10, TimeUnit.SECONDS)).get("data").get("id").asText();
+
+        // CHANGE_NAME 之后 GET_ROOM_PLAYERS：快照推迟到批处理结束，和广播衔接
+        socket.sendText("{\"msgType\":38,\"data\":[{\"msgType\":3,\"data\":\"Bob\"},"
+            + "{\"msgType\":4,\"data\":\"" + roomId + "\"}]}", true).join();
+        String result = received.poll(10, TimeUnit.SECONDS);
+        assertTrue(result.contains("\"msgType\":39") && result.contains("[true,true]"), result);
+        int snapshots = 0;
+        for (String frame; (frame = received.poll(300, TimeUnit.MILLISECONDS)) != null;) {
+            JsonNode message = mapper.readTree(frame);
+            if (message.get("msgType").asInt() == 17) {
+                snapshots++;
+                assertTrue(frame.contains("\"name\":\"Bob\""), frame);
+            } else {
+                assertEquals(36, message.get("msgType").asInt(), frame);
+            }
+        }
+        assertEquals(1, snapshots);
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+}
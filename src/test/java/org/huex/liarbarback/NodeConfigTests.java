@@ -0,0 +1,37 @@
+package org.huex.liarbarback;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.huex.liarbarback.models.MsgIds;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class NodeConfigTests {
+
+    private static NodeConfig config(long nodeId, String storeType) {
+        NodeConfig config = new NodeConfig();
+        ReflectionTestUtils.setField(config, "nodeId", nodeId);
+        ReflectionTestUtils.setField(config, "storeType", storeType);
+        return config;
+    }
+
+    @Test
+    void sharedStoreRequiresValidNodeId() {
+        assertThrows(IllegalStateException.class, () -> config(-1, "redis").configure());
+        assertThrows(IllegalArgumentException.class, () -> config(1024, "redis").configure());
+    }
+
+    @Test
+    void configuredNodeIdReachesMsgIds() {
+        long previous = MsgIds.getNode();
+        try {
+            NodeConfig config = config(7, "redis");
+            config.configure();
+            assertEquals(7, config.getNodeId());
+            assertEquals(7, MsgIds.nodeOf(MsgIds.nextLong()));
+        } finally {
+            MsgIds.setNode(previous);
+        }
+    }
+}
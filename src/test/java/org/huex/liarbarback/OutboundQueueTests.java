@@ -0,0 +1,95 @@
+package org.huex.liarbarback;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.huex.liarbarback.transport.ClientChannel;
+import org.junit.jupiter.api.Test;
+
+class OutboundQueueTests {
+    // 记录发出的文本，回调由测试手动完成
+    private final List<Object> sent = new ArrayList<>();
+    private final List<Consumer<Throwable>> handlers = new ArrayList<>();
+    private final OutboundQueue.Counters counters = new OutboundQueue.Counters();
+
+    private ClientChannel session() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        return new ClientChannel() {
+            public String getUserId() { return "user"; }
+            public String getSubprotocol() { return null; }
+            public boolean isOpen() { return true; }
+            public Map<String, Object> getAttributes() { return attributes; }
+            public void sendText(String text, Consumer<Throwable> callback) {
+                sent.add(text);
+                handlers.add(callback);
+            }
+            public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) {
+                sent.add(bytes);
+                handlers.add(callback);
+            }
+            public void close(int code, String reason) {}
+        };
+    }
+
+    private void complete() {
+        handlers.remove(0).accept(null);
+    }
+
+    @Test
+    void sendsOneMessageAtATime() {
+        OutboundQueue queue = OutboundQueue.attach(session(), "user", 16, 1024, Long.MAX_VALUE, counters);
+        queue.offerText("a", null, false);
+        queue.offerText("b", null, false);
+        assertEquals(List.of("a"), sent);
+        complete();
+        assertEquals(List.of("a", "b"), sent);
+        complete();
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.bytes());
+    }
+
+    @Test
+    void newerSnapshotReplacesQueuedUpdatesOfTheSameRoom() {
+        OutboundQueue queue = OutboundQueue.attach(session(), "user", 16, 1024, Long.MAX_VALUE, counters);
+        queue.offerText("error", null, false);
+        queue.offerText("snapshot1", "ROOM01", true);
+        queue.offerText("delta2", "ROOM01", false);
+        queue.offerText("other", "ROOM02", false);
+        queue.offerText("snapshot3", "ROOM01", true);
+        while (!handlers.isEmpty()) complete();
+        assertEquals(List.of("error", "other", "snapshot3"), sent);
+        assertEquals(2, counters.coalesced.sum());
+    }
+
+    @Test
+    void overflowsWhenStayingOverBudget() throws InterruptedException {
+        OutboundQueue queue = OutboundQueue.attach(session(), "user", 2, 1024, 0, counters);
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerText("a", null, false));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerText("b", null, false));
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offerText("c", "ROOM01", false));
+        Thread.sleep(1);
+        assertEquals(OutboundQueue.Result.OVERFLOW, queue.offerText("d", null, false));
+        assertEquals(OutboundQueue.Result.CLOSED, queue.offerText("e", null, false));
+        assertEquals(1, counters.dropped.sum());
+        assertEquals(1, counters.overflowed.sum());
+    }
+
+    @Test
+    void oneOffRepliesAreQueuedOverBudget() {
+        OutboundQueue queue = OutboundQueue.attach(session(), "user", 2, 1024, Long.MAX_VALUE, counters);
+        queue.offerText("a", null, false);
+        queue.offerText("snapshot1", "ROOM01", true);
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offerText("delta2", "ROOM01", false));
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offerText("spectate", "ROOM02", true));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerText("error", null, false));
+        while (!handlers.isEmpty()) complete();
+        assertEquals(List.of("a", "snapshot1", "error"), sent);
+        assertEquals(2, counters.dropped.sum());
+    }
+}
@@ -0,0 +1,60 @@
+package org.huex.liarbarback.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+class InboundExecutorsTests {
+
+    @Test
+    void keepsPerConnectionOrderOnEveryMode() throws Exception {
+        for (String mode : List.of("direct", "platform", "virtual")) {
+            Executor executor = InboundExecutors.create(mode, 4, 16);
+            // 和 ClientConnection 一样把每条消息串在上一条的完成之后，处理本身在别的线程上异步完成
+            List<Integer> handled = new ArrayList<>();
+            CompletableFuture<Boolean> pending = CompletableFuture.completedFuture(true);
+            for (int i = 0; i < 200; i++) {
+                int message = i;
+                pending = pending.thenComposeAsync(previous -> CompletableFuture.supplyAsync(() -> {
+                    LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(20_000));
+                    synchronized (handled) {
+                        handled.add(message);
+                    }
+                    return true;
+                }), executor);
+            }
+            pending.get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i, handled.get(i), mode);
+            }
+            if (executor instanceof ExecutorService service) {
+                service.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void platformModeRunsOffTheCallingThread() throws Exception {
+        ExecutorService executor = (ExecutorService) InboundExecutors.create("platform", 2, 16);
+        Thread caller = Thread.currentThread();
+        Thread worker = CompletableFuture.supplyAsync(Thread::currentThread, executor).get(1, TimeUnit.SECONDS);
+        assertNotEquals(caller, worker);
+        executor.shutdown();
+    }
+
+    @Test
+    void rejectsUnknownMode() {
+        assertThrows(IllegalArgumentException.class, () -> InboundExecutors.create("fibers", 1, 1));
+    }
+}
@@ -0,0 +1,147 @@
+package org.huex.liarbarback.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class MailboxTests {
+
+    @Test
+    void tasksFromManyThreadsNeverOverlapAndKeepOrder() throws Exception {
+        int producers = 8, perProducer = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ExecutorService senders = Executors.newFixedThreadPool(producers);
+        try {
+            Mailbox mailbox = new Mailbox(pool);
+            AtomicInteger running = new AtomicInteger();
+            AtomicBoolean overlapped = new AtomicBoolean();
+            // 只在邮箱中访问，不需要同步
+            int[] last = new int[producers];
+            List<Integer> outOfOrder = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<?>> done = new ArrayList<>();
+            for (int p=0;p<producers;p++) {
+                int producer = p;
+                done.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (int i=1;i<=perProducer;i++) {
+                        int seq = i;
+                        mailbox.execute(() -> {
+                            if (running.incrementAndGet() != 1) overlapped.set(true);
+                            if (last[producer] != seq - 1) outOfOrder.add(producer);
+                            last[producer] = seq;
+                            running.decrementAndGet();
+                        });
+                    }
+                }, senders));
+            }
+            start.countDown();
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+            // 排在所有任务后面的任务完成时，前面的都已执行
+            mailbox.submit(() -> true).get(10, TimeUnit.SECONDS);
+
+            assertEquals(false, overlapped.get());
+            assertTrue(mailbox.submit(outOfOrder::isEmpty).get(), "out of order: " + outOfOrder);
+            for (int p=0;p<producers;p++) {
+                assertEquals(perProducer, last[p]);
+            }
+        } finally {
+            senders.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void drainsAtMost64TasksBeforeHandingOff() {
+        Queue<Runnable> drains = new ArrayDeque<>();
+        Mailbox mailbox = new Mailbox(drains::add);
+        List<Integer> ran = new ArrayList<>();
+        for (int i=0;i<200;i++) {
+            int seq = i;
+            mailbox.execute(() -> ran.add(seq));
+        }
+        // 正在排队的邮箱不会重复提交
+        assertEquals(1, drains.size());
+
+        int[] expected = {64, 128, 192, 200};
+        for (int count : expected) {
+            drains.poll().run();
+            assertEquals(count, ran.size());
+        }
+        assertTrue(drains.isEmpty());
+        for (int i=0;i<200;i++) {
+            assertEquals(i, ran.get(i));
+        }
+    }
+
+    @Test
+    void taskAddedDuringDrainIsScheduledAgain() {
+        Queue<Runnable> drains = new ArrayDeque<>();
+        Mailbox mailbox = new Mailbox(drains::add);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i=0;i<64;i++) {
+            boolean lastOfBatch = i == 63;
+            mailbox.execute(() -> {
+                ran.incrementAndGet();
+                // 这一批已满，新任务只能在清空标记后重新提交
+                if (lastOfBatch) mailbox.execute(ran::incrementAndGet);
+            });
+        }
+        drains.poll().run();
+        assertEquals(64, ran.get());
+        assertEquals(1, drains.size());
+        drains.poll().run();
+        assertEquals(65, ran.get());
+        assertTrue(drains.isEmpty());
+    }
+
+    @Test
+    void noTaskIsLostWhenSubmittedAsDrainFinishes() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Mailbox mailbox = new Mailbox(pool);
+            // 每个任务都在上一个任务刚执行完、邮箱正要让出线程时提交
+            for (int i=0;i<20000;i++) {
+                mailbox.submit(() -> true).get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void rejectedScheduleCanBeRetried() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        Queue<Runnable> drains = new ArrayDeque<>();
+        Mailbox mailbox = new Mailbox(task -> {
+            if (reject.get()) throw new RejectedExecutionException("full");
+            drains.add(task);
+        });
+        AtomicInteger ran = new AtomicInteger();
+        assertThrows(RejectedExecutionException.class, () -> mailbox.execute(ran::incrementAndGet));
+        reject.set(false);
+        mailbox.execute(ran::incrementAndGet);
+        drains.poll().run();
+        // 被拒绝时任务已经入队，下一次调度一起执行
+        assertEquals(2, ran.get());
+    }
+}
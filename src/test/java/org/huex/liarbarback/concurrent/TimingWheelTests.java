@@ -0,0 +1,45 @@
+package org.huex.liarbarback.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTests {
+
+    @Test
+    void runsTasksInDeadlineOrderIncludingLaterRounds() throws InterruptedException {
+        // 8 个桶 * 5ms，40ms 之后的任务需要转一圈以上
+        TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 8);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        wheel.schedule(() -> { order.add(3); done.countDown(); }, 100, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { order.add(1); done.countDown(); }, 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { order.add(2); done.countDown(); }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2, 3), order);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        wheel.stop();
+    }
+
+    @Test
+    void cancelledTasksDoNotRun() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 8);
+        CountDownLatch ran = new CountDownLatch(1);
+        TimingWheel.Timeout cancelled = wheel.schedule(ran::countDown, 20, TimeUnit.MILLISECONDS);
+        TimingWheel.Timeout kept = wheel.schedule(() -> {}, 20, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(kept.isExpired());
+        assertFalse(kept.cancel());
+        wheel.stop();
+    }
+}
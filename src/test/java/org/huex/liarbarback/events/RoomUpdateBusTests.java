@@ -0,0 +1,41 @@
+package org.huex.liarbarback.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RoomUpdateBusTests {
+
+    @Test
+    void updatesWithinOneTickCollapseIntoOneFlush() throws Exception {
+        RoomManager roomManager = new RoomManager();
+        ReflectionTestUtils.setField(roomManager, "playerManager", new PlayerManager());
+        RoomUpdateBus bus = new RoomUpdateBus();
+        ReflectionTestUtils.setField(bus, "roomManager", roomManager);
+        List<String> flushed = new CopyOnWriteArrayList<>();
+        bus.subscribe(room -> flushed.add(room.getId()));
+
+        Room first = roomManager.createRoom("user1");
+        Room second = roomManager.createRoom("user2");
+        for (int i=0;i<5;i++) {
+            bus.markDirty(first);
+        }
+        bus.markDirty(second);
+        bus.flush();
+        // 刷新在房间邮箱中执行，排在它后面的任务完成时刷新已经完成
+        roomManager.submit(first, () -> true).get();
+        roomManager.submit(second, () -> true).get();
+
+        assertEquals(2, flushed.size());
+        assertEquals(6, bus.getMarkedCount());
+        assertEquals(2, bus.getFlushedCount());
+        roomManager.shutdown();
+    }
+}
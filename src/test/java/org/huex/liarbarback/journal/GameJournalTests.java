@@ -0,0 +1,124 @@
+package org.huex.liarbarback.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.huex.liarbarback.models.Card;
+import org.huex.liarbarback.models.PlayCards;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameJournalTests {
+    @TempDir Path dir;
+
+    @Test
+    void replayRebuildsGameAcrossSegments() throws IOException {
+        Room room = new Room("ABCDEF");
+        Room removed = new Room("GHIJKL");
+        // 每个分段 16 条，强制换几次分段
+        try (GameJournal journal = new GameJournal(dir, 16, false, 1, 64)) {
+            Player host = new Player("host");
+            host.setHost(true);
+            host.setRoomId(room.getId());
+            room.addPlayer(host);
+            journal.append(room, JournalOp.CREATE_ROOM, "host");
+            for (int i = 0; i < 3; i++) {
+                Player player = new Player("user" + i);
+                player.setRoomId(room.getId());
+                room.addPlayer(player);
+                journal.append(room, JournalOp.JOIN_ROOM, player.getUserId());
+            }
+            room.removePlayer("user2");
+            journal.append(room, JournalOp.LEAVE_ROOM, "user2");
+            for (String[] rename : new String[][] {{"host", "房主"}, {"user0", "Alice"}, {"user0", "Bob"}, {"user1", ""}}) {
+                room.getPlayer(rename[0]).setName(rename[1]);
+                room.markUpdated();
+                journal.append(room, JournalOp.CHANGE_NAME, rename[0], rename[1]);
+            }
+            for (Player player : room.getPlayerList()) {
+                player.setReady(true);
+                journal.append(room, JournalOp.PREPARE, player.getUserId(), 0, 1);
+            }
+            room.startGame(42L);
+            journal.append(room, JournalOp.START_GAME, "host", room.getSeed(), 0);
+
+            for (int step = 0; step < 200 && !room.isEnded(); step++) {
+                Player current = room.getPlayerList().get(room.getCurrentPlayerIndex());
+                String userId = current.getUserId();
+                if (step == 5) {
+                    current.setActive(false);
+                    room.markUpdated();
+                    journal.append(room, JournalOp.DEACTIVATE, userId);
+                    room.autoPlay(userId);
+                    journal.append(room, JournalOp.AUTO_PLAY, userId);
+                    current.setActive(true);
+                    room.markUpdated();
+                    journal.append(room, JournalOp.ACTIVATE, userId);
+                } else if (room.isNewRoundBeginner()) {
+                    Card card = Card.firstOf(current.getHand());
+                    List<Card> cards = card == null ? null : List.of(card);
+                    Card.Rank rank = card == null ? null : card.getRank();
+                    room.playCards(new PlayCards(cards, rank), userId);
+                    journal.append(room, JournalOp.PLAY_CARDS, userId,
+                        cards == null ? JournalReplay.NO_CARDS : Card.maskOf(cards),
+                        rank == null ? JournalReplay.NO_RANK : rank.ordinal());
+                } else if (room.canChallengeOrSkip() && step % 3 == 0) {
+                    room.challenge(userId);
+                    journal.append(room, JournalOp.CHALLENGE, userId);
+                } else {
+                    room.autoPlay(userId);
+                    journal.append(room, JournalOp.AUTO_PLAY, userId);
+                }
+            }
+
+            removed.addPlayer(new Player("other"));
+            journal.append(removed, JournalOp.CREATE_ROOM, "other");
+            journal.append(removed, JournalOp.REMOVE_ROOM, null);
+        }
+        assertTrue(GameJournal.segments(dir).size() > 1);
+
+        Map<String, Room> rooms = JournalReplay.replay(dir);
+        assertEquals(1, rooms.size());
+        Room replayed = rooms.get(room.getId());
+        assertEquals(room.toString(), replayed.toString());
+        assertEquals(room.getTurn(), replayed.getTurn());
+        assertEquals(room.getJournalSeq(), replayed.getJournalSeq());
+        for (int i = 0; i < room.getPlayerList().size(); i++) {
+            assertEquals(room.getPlayerList().get(i).getName(), replayed.getPlayerList().get(i).getName());
+            assertEquals(room.getPlayerList().get(i).getHand(), replayed.getPlayerList().get(i).getHand());
+            assertEquals(room.getPlayerList().get(i).getPlayed(), replayed.getPlayerList().get(i).getPlayed());
+        }
+    }
+
+    @Test
+    void textSharesTheUserIdSpaceAndIsCutOnCharacterBoundaries() {
+        ByteBuffer buffer = ByteBuffer.allocate(JournalRecord.BYTES);
+        JournalRecord record = new JournalRecord(1, 2, JournalOp.CHANGE_NAME, "ABCDEF", "user", 0, 0, "名字");
+        record.writeTo(buffer);
+        assertEquals(record, JournalRecord.readFrom(buffer.flip()));
+
+        // userId 占 80 字节后只剩 10 字节：3 个汉字（9 字节），第 4 个不能只写一半
+        String userId = "u".repeat(80);
+        buffer.clear();
+        new JournalRecord(1, 2, JournalOp.CHANGE_NAME, "ABCDEF", userId, 0, 0, "一二三四五").writeTo(buffer);
+        JournalRecord truncated = JournalRecord.readFrom(buffer.flip());
+        assertEquals(userId, truncated.userId());
+        assertEquals("一二三", truncated.text());
+
+        // userId 占满时没有文本
+        buffer.clear();
+        new JournalRecord(1, 2, JournalOp.CHANGE_NAME, "ABCDEF", "u".repeat(100), 0, 0, "name").writeTo(buffer);
+        JournalRecord full = JournalRecord.readFrom(buffer.flip());
+        assertEquals("u".repeat(91), full.userId());
+        assertNull(full.text());
+    }
+}
@@ -0,0 +1,191 @@
+package org.huex.liarbarback.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.transport.ClientChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ReaperTests {
+    private final PlayerManager playerManager = new PlayerManager();
+    private final RoomManager roomManager = new RoomManager();
+    private final RoomUpdateBus bus = new RoomUpdateBus();
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 64);
+    private final Reaper reaper = new Reaper();
+
+    ReaperTests() {
+        ReflectionTestUtils.setField(roomManager, "playerManager", playerManager);
+        ReflectionTestUtils.setField(bus, "roomManager", roomManager);
+        ReflectionTestUtils.setField(reaper, "roomManager", roomManager);
+        ReflectionTestUtils.setField(reaper, "playerManager", playerManager);
+        ReflectionTestUtils.setField(reaper, "roomUpdates", bus);
+        ReflectionTestUtils.setField(reaper, "timingWheel", wheel);
+        ReflectionTestUtils.setField(reaper, "journal", GameJournal.disabled());
+        limits(60000, 60000, 60000, 60000);
+    }
+
+    private void limits(long roomIdle, long abandoned, long playerIdle, long sessionIdle) {
+        ReflectionTestUtils.setField(reaper, "roomIdleMillis", roomIdle);
+        ReflectionTestUtils.setField(reaper, "abandonedMillis", abandoned);
+        ReflectionTestUtils.setField(reaper, "playerIdleMillis", playerIdle);
+        ReflectionTestUtils.setField(reaper, "sessionIdleMillis", sessionIdle);
+    }
+
+    @AfterEach
+    void stop() {
+        wheel.stop();
+        roomManager.shutdown();
+        reaper.shutdown();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private Room createRoom(String host, String... others) {
+        Room room = roomManager.createRoom(host);
+        for (String userId : others) {
+            Player player = new Player(userId);
+            player.setRoomId(room.getId());
+            room.addPlayer(player);
+            playerManager.addPlayer(player);
+        }
+        room.touch();
+        return room;
+    }
+
+    @Test
+    void idleRoomIsEmptiedAndLeftToTheFlush() throws Exception {
+        limits(50, 60000, 60000, 60000);
+        Room room = createRoom("user0", "user1");
+        reaper.watchRoom(room);
+
+        await(() -> reaper.getReapedRooms() == 1);
+        assertEquals(1, reaper.getReapedRooms());
+        assertTrue(roomManager.submit(room, () -> room.getPlayerList().isEmpty()).get());
+        assertFalse(playerManager.getPlayer("user0").isPresent());
+        assertFalse(playerManager.getPlayer("user1").isPresent());
+        // 房间本身由刷新删除
+        assertEquals(1, bus.getMarkedCount());
+    }
+
+    @Test
+    void onlyAbandonedRoomsAreReapedEarly() throws Exception {
+        limits(60000, 50, 60000, 60000);
+        Room online = createRoom("user0");
+        Room abandoned = createRoom("user1", "user2");
+        abandoned.getPlayerList().forEach(player -> player.setActive(false));
+        reaper.watchRoom(online);
+        reaper.watchRoom(abandoned);
+
+        await(() -> reaper.getReapedRooms() == 1);
+        Thread.sleep(100);
+        assertEquals(1, reaper.getReapedRooms());
+        assertTrue(roomManager.submit(abandoned, () -> abandoned.getPlayerList().isEmpty()).get());
+        assertEquals(1, roomManager.submit(online, () -> online.getPlayerList().size()).get());
+        assertTrue(playerManager.getPlayer("user0").isPresent());
+    }
+
+    @Test
+    void disconnectedPlayerKeepsSeatUntilGameEnds() throws Exception {
+        limits(60000, 60000, 30, 60000);
+        Room room = createRoom("user0", "user1");
+        Player player = room.getPlayer("user1");
+        roomManager.submit(room, () -> {
+            room.startGame(7L);
+            player.setActive(false);
+            reaper.watchPlayer(room, player);
+            return true;
+        }).get();
+
+        Thread.sleep(150);
+        assertSame(player, roomManager.submit(room, () -> room.getPlayer("user1")).get());
+        assertEquals(0, reaper.getReapedPlayers());
+
+        roomManager.submit(room, () -> {
+            room.setEnded(true);
+            return true;
+        }).get();
+        await(() -> reaper.getReapedPlayers() == 1);
+        assertNull(roomManager.submit(room, () -> room.getPlayer("user1")).get());
+        assertFalse(playerManager.getPlayer("user1").isPresent());
+        assertEquals(1, bus.getMarkedCount());
+    }
+
+    @Test
+    void reconnectedPlayerIsNotRemoved() throws Exception {
+        limits(60000, 60000, 30, 60000);
+        Room room = createRoom("user0", "user1");
+        Player player = room.getPlayer("user1");
+        roomManager.submit(room, () -> {
+            player.setActive(false);
+            reaper.watchPlayer(room, player);
+            player.setActive(true);
+            return true;
+        }).get();
+
+        Thread.sleep(150);
+        assertSame(player, roomManager.submit(room, () -> room.getPlayer("user1")).get());
+        assertEquals(0, reaper.getReapedPlayers());
+    }
+
+    @Test
+    void idleSessionIsClosedWhileActiveOneIsKept() throws Exception {
+        limits(60000, 60000, 60000, 80);
+        AtomicInteger idleClosed = new AtomicInteger();
+        AtomicInteger activeClosed = new AtomicInteger();
+        ClientChannel idle = channel("idle", idleClosed);
+        ClientChannel active = channel("active", activeClosed);
+        reaper.watchSession(idle);
+        reaper.watchSession(active);
+
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        while (System.nanoTime() < end) {
+            reaper.touchSession(active);
+            Thread.sleep(10);
+        }
+        await(() -> idleClosed.get() != 0);
+        assertEquals(ClientChannel.GOING_AWAY, idleClosed.get());
+        assertEquals(0, activeClosed.get());
+        assertEquals(1, reaper.getReapedSessions());
+
+        reaper.unwatchSession(active);
+        Thread.sleep(200);
+        assertEquals(0, activeClosed.get());
+    }
+
+    // 记录关闭码的假连接
+    private static ClientChannel channel(String userId, AtomicInteger closedWith) {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        return new ClientChannel() {
+            public String getUserId() { return userId; }
+            public String getSubprotocol() { return null; }
+            public boolean isOpen() { return closedWith.get() == 0; }
+            public Map<String, Object> getAttributes() { return attributes; }
+            public void sendText(String text, Consumer<Throwable> callback) { callback.accept(null); }
+            public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) { callback.accept(null); }
+            public void close(int code, String reason) { closedWith.set(code); }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package org.huex.liarbarback.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class RoomCodeAllocatorTests {
+
+    @Test
+    void codesAreUniqueSixCharacterBase36() {
+        RoomCodeAllocator allocator = new RoomCodeAllocator(42);
+        Set<String> codes = new HashSet<>();
+        for (int i=0;i<200000;i++) {
+            String code = allocator.allocate(c -> false);
+            assertTrue(code.matches("[0-9A-Z]{6}"), code);
+            assertTrue(codes.add(code), "duplicate " + code);
+        }
+    }
+
+    @Test
+    void permutationStaysInsideTheCodeSpace() {
+        RoomCodeAllocator allocator = new RoomCodeAllocator(7);
+        for (long i=RoomCodeAllocator.SPACE-1000;i<RoomCodeAllocator.SPACE;i++) {
+            assertTrue(allocator.permute(i) < RoomCodeAllocator.SPACE);
+        }
+    }
+
+    @Test
+    void freedCodesAreReusedOnlyAfterCooldown() {
+        RoomCodeAllocator allocator = new RoomCodeAllocator(1);
+        String code = allocator.allocate(c -> false);
+        allocator.release(code, Long.MAX_VALUE / 2);
+        assertNotEquals(code, allocator.allocate(c -> false));
+
+        RoomCodeAllocator recycling = new RoomCodeAllocator(1);
+        String freed = recycling.allocate(c -> false);
+        recycling.release(freed, 0);
+        assertEquals(freed, recycling.allocate(c -> false));
+    }
+
+    @Test
+    void skipsCodesStillInUse() {
+        RoomCodeAllocator allocator = new RoomCodeAllocator(3);
+        String first = new RoomCodeAllocator(3).allocate(c -> false);
+        assertNotEquals(first, allocator.allocate(first::equals));
+    }
+}
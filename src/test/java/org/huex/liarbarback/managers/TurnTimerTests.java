@@ -0,0 +1,87 @@
+package org.huex.liarbarback.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class TurnTimerTests {
+
+    @Test
+    void idlePlayerIsAutoPlayedAfterTimeout() throws Exception {
+        RoomManager roomManager = new RoomManager();
+        ReflectionTestUtils.setField(roomManager, "playerManager", new PlayerManager());
+        RoomUpdateBus bus = new RoomUpdateBus();
+        ReflectionTestUtils.setField(bus, "roomManager", roomManager);
+        TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 64);
+        TurnTimer turnTimer = new TurnTimer();
+        ReflectionTestUtils.setField(turnTimer, "roomManager", roomManager);
+        ReflectionTestUtils.setField(turnTimer, "roomUpdates", bus);
+        ReflectionTestUtils.setField(turnTimer, "timingWheel", wheel);
+        ReflectionTestUtils.setField(turnTimer, "timeoutMillis", 30L);
+
+        Room room = roomManager.createRoom("user0");
+        room.addPlayer(new Player("user1"));
+        roomManager.submit(room, () -> {
+            room.startGame(11L);
+            turnTimer.update(room);
+            return true;
+        }).get();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (turnTimer.getExpiredCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // 超时任务在房间邮箱中执行，排在它后面的任务完成时自动出牌已经完成
+        long turn = roomManager.submit(room, room::getTurn).get();
+        assertEquals(1, turnTimer.getExpiredCount());
+        assertEquals(2, turn);
+
+        roomManager.submit(room, () -> {
+            room.restartGame();
+            turnTimer.update(room);
+            return true;
+        }).get();
+        assertNull(room.getTurnTimeout());
+        wheel.stop();
+        roomManager.shutdown();
+    }
+
+    @Test
+    void removedRoomIsNotAutoPlayed() throws Exception {
+        RoomManager roomManager = new RoomManager();
+        ReflectionTestUtils.setField(roomManager, "playerManager", new PlayerManager());
+        RoomUpdateBus bus = new RoomUpdateBus();
+        ReflectionTestUtils.setField(bus, "roomManager", roomManager);
+        TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 64);
+        TurnTimer turnTimer = new TurnTimer();
+        ReflectionTestUtils.setField(turnTimer, "roomManager", roomManager);
+        ReflectionTestUtils.setField(turnTimer, "roomUpdates", bus);
+        ReflectionTestUtils.setField(turnTimer, "timingWheel", wheel);
+        ReflectionTestUtils.setField(turnTimer, "timeoutMillis", 30L);
+
+        Room room = roomManager.createRoom("user0");
+        room.addPlayer(new Player("user1"));
+        roomManager.submit(room, () -> {
+            room.startGame(11L);
+            turnTimer.update(room);
+            // 计时还在，房间已经被删除
+            roomManager.removeRoom(room.getId());
+            return true;
+        }).get();
+
+        Thread.sleep(200);
+        assertEquals(1, roomManager.submit(room, room::getTurn).get());
+        assertEquals(0, turnTimer.getExpiredCount());
+        assertEquals(0, bus.getMarkedCount());
+        wheel.stop();
+        roomManager.shutdown();
+    }
+}
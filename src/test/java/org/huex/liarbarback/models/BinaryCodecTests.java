@@ -0,0 +1,112 @@
+package org.huex.liarbarback.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.huex.liarbarback.models.Message.MsgType;
+import org.junit.jupiter.api.Test;
+
+import jakarta.websocket.DecodeException;
+
+class BinaryCodecTests {
+    private final MessageBinaryDecoder decoder = new MessageBinaryDecoder();
+
+    private static BinaryReader reader(BinaryWriter writer) {
+        return new BinaryReader(ByteBuffer.wrap(writer.toByteArray()));
+    }
+
+    @Test
+    void varintsAndZigZagRoundTripAtTheLimits() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        BinaryWriter writer = new BinaryWriter();
+        for (long value : values) {
+            writer.writeVarint(value).writeZigZag(value);
+        }
+        BinaryReader reader = reader(writer);
+        for (long value : values) {
+            assertEquals(value, reader.readVarint());
+            assertEquals(value, reader.readZigZag());
+        }
+        assertFalse(reader.hasRemaining());
+
+        // 7 位一组：127 占 1 字节，128 占 2 字节，负数按无符号占满 10 字节；zigzag 让小的负数也只占 1 字节
+        assertEquals(1, new BinaryWriter().writeVarint(127).size());
+        assertEquals(2, new BinaryWriter().writeVarint(128).size());
+        assertEquals(10, new BinaryWriter().writeVarint(-1).size());
+        assertEquals(1, new BinaryWriter().writeZigZag(-1).size());
+    }
+
+    @Test
+    void rejectsOverlongVarint() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+        assertThrows(IllegalArgumentException.class, () -> new BinaryReader(ByteBuffer.wrap(bytes)).readVarint());
+    }
+
+    @Test
+    void stringsDistinguishNullFromEmpty() {
+        BinaryWriter writer = new BinaryWriter().writeString(null).writeString("").writeString("名字");
+        assertArrayEquals(new byte[] {0, 1}, Arrays.copyOf(writer.toByteArray(), 2));
+        BinaryReader reader = reader(writer);
+        assertNull(reader.readString());
+        assertEquals("", reader.readString());
+        assertEquals("名字", reader.readString());
+    }
+
+    @Test
+    void everyCardFitsInOneByte() {
+        BinaryWriter writer = new BinaryWriter();
+        for (int i=0;i<Card.DECK_SIZE;i++) {
+            writer.writeCard(Card.ofIndex(i));
+        }
+        assertEquals(Card.DECK_SIZE, writer.size());
+        BinaryReader reader = reader(writer);
+        for (int i=0;i<Card.DECK_SIZE;i++) {
+            assertSame(Card.ofIndex(i), reader.readCard());
+        }
+        assertThrows(IllegalArgumentException.class, () -> Card.fromByte(0xFF));
+    }
+
+    @Test
+    void messagesRoundTrip() throws DecodeException {
+        PlayCards playCards = new PlayCards(List.of(Card.ofIndex(0), Card.ofIndex(51)), Card.Rank.KING);
+        Message<?> decoded = decoder.decode(ByteBuffer.wrap(
+            MessageBinaryEncoder.toBytes(new Message<>("id", MsgType.PLAY_CARDS, playCards))));
+        assertEquals(MsgType.PLAY_CARDS, decoded.getMsgType());
+        assertEquals("id", decoded.getMsgId());
+        PlayCards cards = (PlayCards) decoded.getData();
+        assertEquals(playCards.getCards(), cards.getCards());
+        assertEquals(Card.Rank.KING, cards.getClaimRank());
+
+        Message<?> resync = decoder.decode(ByteBuffer.wrap(
+            MessageBinaryEncoder.toBytes(new Message<>(null, MsgType.RESYNC, -5L))));
+        assertNull(resync.getMsgId());
+        assertEquals(-5L, resync.getData());
+
+        Message<?> noData = decoder.decode(ByteBuffer.wrap(
+            MessageBinaryEncoder.toBytes(new Message<>("x", MsgType.JOIN_ROOM, null))));
+        assertNull(noData.getData());
+    }
+
+    @Test
+    void truncatedOrInvalidInputRaisesDecodeException() {
+        byte[] bytes = MessageBinaryEncoder.toBytes(new Message<>("id", MsgType.JOIN_ROOM, "ABCDEF"));
+        for (int length=0;length<bytes.length;length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+            assertThrows(DecodeException.class, () -> decoder.decode(truncated), "length " + length);
+        }
+        BinaryWriter unknownType = new BinaryWriter().writeVarint(MsgType.values().length).writeString(null);
+        assertThrows(DecodeException.class, () -> decoder.decode(ByteBuffer.wrap(unknownType.toByteArray())));
+        BinaryWriter tooManyCards = new BinaryWriter().writeVarint(MsgType.PLAY_CARDS.ordinal()).writeString(null)
+            .writeBoolean(true).writeVarint(53);
+        assertThrows(DecodeException.class, () -> decoder.decode(ByteBuffer.wrap(tooManyCards.toByteArray())));
+    }
+}
@@ -0,0 +1,73 @@
+package org.huex.liarbarback.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.huex.liarbarback.models.Message.MsgType;
+import org.junit.jupiter.api.Test;
+
+import jakarta.websocket.DecodeException;
+
+class MessageDecoderTests {
+    private final MessageDecoder decoder = new MessageDecoder();
+
+    @Test
+    void decodesPlayCardsPayload() throws DecodeException {
+        Message<?> message = decoder.decode(
+            "{\"msgId\":\"a\",\"msgType\":8,\"data\":{\"cards\":[{\"suit\":0,\"rank\":1}],\"claimRank\":1}}");
+        assertEquals(MsgType.PLAY_CARDS, message.getMsgType());
+        PlayCards playCards = assertInstanceOf(PlayCards.class, message.getData());
+        assertEquals(Card.Rank.ACE, playCards.getClaimRank());
+        assertEquals(1, playCards.getCards().size());
+        assertSame(Card.of(Card.Suit.HEARTS, Card.Rank.ACE), playCards.getCards().get(0));
+    }
+
+    @Test
+    void decodesDataBeforeMsgType() throws DecodeException {
+        Message<?> message = decoder.decode("{\"data\":true,\"msgType\":5}");
+        assertEquals(MsgType.PREPARE, message.getMsgType());
+        assertEquals(Boolean.TRUE, message.getData());
+    }
+
+    @Test
+    void ignoresDataForTypesWithoutPayload() throws DecodeException {
+        Message<?> message = decoder.decode("{\"msgType\":9,\"data\":{\"cards\":[]}}");
+        assertEquals(MsgType.SKIP, message.getMsgType());
+        assertNull(message.getData());
+    }
+
+    @Test
+    void decodesBatchInBothFormats() throws DecodeException {
+        Message<?> message = decoder.decode(
+            "{\"msgType\":38,\"data\":[{\"msgType\":3,\"data\":\"Alice\"},{\"msgId\":\"b\",\"data\":true,\"msgType\":5}]}");
+        assertEquals(MsgType.BATCH, message.getMsgType());
+        List<?> items = assertInstanceOf(List.class, message.getData());
+        assertEquals(2, items.size());
+        Message<?> prepare = (Message<?>) items.get(1);
+        assertEquals(MsgType.PREPARE, prepare.getMsgType());
+        assertEquals("b", prepare.getMsgId());
+        assertEquals(Boolean.TRUE, prepare.getData());
+
+        Message<?> binary = new MessageBinaryDecoder().decode(ByteBuffer.wrap(MessageBinaryEncoder.toBytes(message)));
+        assertEquals(MsgType.BATCH, binary.getMsgType());
+        Message<?> changeName = (Message<?>) ((List<?>) binary.getData()).get(0);
+        assertEquals(MsgType.CHANGE_NAME, changeName.getMsgType());
+        assertEquals("Alice", changeName.getData());
+    }
+
+    @Test
+    void rejectsNestedBatch() {
+        assertThrows(DecodeException.class, () -> decoder.decode("{\"msgType\":38,\"data\":[{\"msgType\":38,\"data\":[]}]}"));
+    }
+
+    @Test
+    void rejectsMissingMsgType() {
+        assertThrows(DecodeException.class, () -> decoder.decode("{\"data\":\"ABCDEF\"}"));
+    }
+}
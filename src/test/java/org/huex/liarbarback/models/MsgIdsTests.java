@@ -0,0 +1,29 @@
+package org.huex.liarbarback.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MsgIdsTests {
+
+    @Test
+    void idsAreFixedWidthAndSortable() {
+        String previous = MsgIds.next();
+        for (int i=0;i<10000;i++) {
+            String id = MsgIds.next();
+            assertEquals(MsgIds.LENGTH, id.length());
+            assertTrue(id.compareTo(previous) > 0, id + " <= " + previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idCarriesTimestampAndNode() {
+        long before = System.currentTimeMillis();
+        long id = MsgIds.nextLong();
+        assertTrue(MsgIds.timestampOf(id) >= before);
+        assertEquals(MsgIds.nodeOf(id), MsgIds.nodeOf(MsgIds.nextLong()));
+        assertEquals(Long.toString(id, 36), MsgIds.format(id).replaceFirst("^0+", ""));
+    }
+}
@@ -0,0 +1,105 @@
+package org.huex.liarbarback.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RoomDeltaTests {
+
+    private static Room roomWithPlayers(int count) {
+        Room room = new Room("ABCDEF");
+        for (int i=0;i<count;i++) {
+            room.addPlayer(new Player("user" + i));
+        }
+        return room;
+    }
+
+    @Test
+    void carriesOnlyChangedFields() {
+        Room room = roomWithPlayers(3);
+        RoomState base = new RoomState(room);
+        room.getPlayerList().get(1).setReady(true);
+        room.getPlayerList().get(2).setName("Alice");
+        room.markUpdated();
+        RoomState current = new RoomState(room);
+
+        RoomDelta delta = RoomDelta.between(room.getId(), base, current);
+        assertNotNull(delta);
+        assertEquals(base.getVersion(), delta.getBaseVersion());
+        assertEquals(current.getVersion(), delta.getVersion());
+        assertNull(delta.getCurrentPlayerIndex());
+        assertNull(delta.getCurrentClaimRank());
+        assertNull(delta.getDeckSize());
+        assertEquals(2, delta.getPlayers().size());
+        RoomDelta.PlayerDelta ready = delta.getPlayers().get(0);
+        assertEquals(1, ready.getIndex());
+        assertEquals(Boolean.TRUE, ready.getReady());
+        assertNull(ready.getName());
+        assertNull(ready.getHandCount());
+        RoomDelta.PlayerDelta renamed = delta.getPlayers().get(1);
+        assertEquals(2, renamed.getIndex());
+        assertEquals("Alice", renamed.getName());
+        assertNull(renamed.getReady());
+    }
+
+    @Test
+    void unchangedRoomGivesEmptyDelta() {
+        Room room = roomWithPlayers(2);
+        RoomState state = new RoomState(room);
+        RoomDelta delta = RoomDelta.between(room.getId(), state, new RoomState(room));
+        // MsgHandler 据此跳过广播
+        assertEquals(delta.getBaseVersion(), delta.getVersion());
+        assertTrue(delta.getPlayers().isEmpty());
+    }
+
+    @Test
+    void structureChangesNeedFullSnapshot() {
+        Room room = roomWithPlayers(2);
+        RoomState base = new RoomState(room);
+        room.addPlayer(new Player("user2"));
+        assertNull(RoomDelta.between(room.getId(), base, new RoomState(room)));
+
+        base = new RoomState(room);
+        room.removePlayer("user0");
+        assertNull(RoomDelta.between(room.getId(), base, new RoomState(room)));
+
+        base = new RoomState(room);
+        room.startGame(42L);
+        assertNull(RoomDelta.between(room.getId(), base, new RoomState(room)));
+
+        base = new RoomState(room);
+        room.restartGame();
+        assertNull(RoomDelta.between(room.getId(), base, new RoomState(room)));
+    }
+
+    @Test
+    void ownCardsAreAttachedOnlyForTheirOwner() {
+        Room room = roomWithPlayers(3);
+        room.startGame(42L);
+        RoomState base = new RoomState(room);
+        int index = room.getCurrentPlayerIndex();
+        Player current = room.getPlayerList().get(index);
+        assertTrue(room.autoPlay(current.getUserId()));
+        RoomDelta delta = RoomDelta.between(room.getId(), base, new RoomState(room));
+
+        assertNotNull(delta.getCurrentPlayerIndex());
+        assertTrue(delta.hasCardChanges(index));
+        assertFalse(delta.hasCardChanges((index + 1) % 3));
+        RoomDelta.PlayerDelta played = delta.getPlayers().stream().filter(p -> p.getIndex()==index).findFirst().orElseThrow();
+        assertEquals(current.getHandCount(), played.getHandCount());
+        assertEquals(current.getPlayedCount(), played.getPlayedCount());
+        // 公共增量不带牌面
+        assertNull(played.getHandCards());
+
+        RoomDelta own = delta.withOwnCards(index, current);
+        RoomDelta.PlayerDelta mine = own.getPlayers().stream().filter(p -> p.getIndex()==index).findFirst().orElseThrow();
+        assertEquals(Card.listOf(current.getHand()), mine.getHandCards());
+        assertEquals(Card.listOf(current.getPlayed()), mine.getPlayedCards());
+        assertEquals(delta.getVersion(), own.getVersion());
+        assertNull(played.getHandCards());
+    }
+}
@@ -0,0 +1,71 @@
+package org.huex.liarbarback.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RoomTests {
+
+    private static Room roomWithPlayers(int count) {
+        Room room = new Room("ABCDEF");
+        for (int i=0;i<count;i++) {
+            room.addPlayer(new Player("user" + i));
+        }
+        return room;
+    }
+
+    @Test
+    void sameSeedDealsSameCards() {
+        Room first = roomWithPlayers(3);
+        Room second = roomWithPlayers(3);
+        first.startGame(42L);
+        second.startGame(42L);
+        assertEquals(42L, first.getSeed());
+        assertEquals(first.getDeck(), second.getDeck());
+        for (int i=0;i<3;i++) {
+            assertEquals(first.getPlayerList().get(i).getUserId(), second.getPlayerList().get(i).getUserId());
+            assertEquals(first.getPlayerList().get(i).getHand(), second.getPlayerList().get(i).getHand());
+        }
+    }
+
+    @Test
+    void dealCoversWholeDeckOnce() {
+        Room room = roomWithPlayers(4);
+        room.startGame();
+        long all = room.getDeck();
+        int total = Long.bitCount(room.getDeck());
+        for (Player player : room.getPlayerList()) {
+            all |= player.getHand();
+            total += player.getHandCount();
+        }
+        assertEquals((1L << Card.DECK_SIZE) - 1, all);
+        assertEquals(Card.DECK_SIZE, total);
+        assertEquals(room.getPlayerList().get(1).getHandCount() + 2, room.getPlayerList().get(0).getHandCount());
+
+        room.restartGame();
+        room.startGame(room.getSeed());
+        assertEquals(Card.DECK_SIZE, Long.bitCount(room.getDeck())
+            + room.getPlayerList().stream().mapToInt(Player::getHandCount).sum());
+    }
+
+    @Test
+    void turnAdvancesOnlyOnSuccessfulMoves() {
+        Room room = roomWithPlayers(3);
+        room.startGame(7L);
+        assertEquals(1, room.getTurn());
+        String first = room.getPlayerList().get(0).getUserId();
+        String second = room.getPlayerList().get(1).getUserId();
+
+        assertFalse(room.skip(second));
+        assertEquals(1, room.getTurn());
+        Card card = Card.firstOf(room.getPlayerList().get(0).getHand());
+        assertTrue(room.playCards(new PlayCards(List.of(card), card.getRank()), first));
+        assertEquals(2, room.getTurn());
+        assertTrue(room.challenge(second));
+        assertEquals(3, room.getTurn());
+    }
+}
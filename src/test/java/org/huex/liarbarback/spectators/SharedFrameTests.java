@@ -0,0 +1,44 @@
+package org.huex.liarbarback.spectators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.huex.liarbarback.models.Card;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SharedFrameTests {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void publicFrameHidesEveryHand() throws Exception {
+        Room room = new Room("ABCDEF");
+        for (int i = 0; i < 4; i++) {
+            room.addPlayer(new Player("user" + i));
+        }
+        room.startGame(7L);
+        room.autoPlay(room.getPlayerList().get(room.getCurrentPlayerIndex()).getUserId());
+
+        SharedFrame frame = SharedFrame.of(room, true, false);
+        assertEquals(room.getVersion(), frame.version());
+        assertNull(frame.binary());
+        assertTrue(frame.covers(room.getVersion(), true, false));
+        assertFalse(frame.covers(room.getVersion(), true, true));
+
+        JsonNode hidden = mapper.valueToTree(Card.of(Card.Suit.UNKNOWN, Card.Rank.NULL));
+        JsonNode players = mapper.readTree(frame.text()).path("data").path("playerList");
+        assertEquals(4, players.size());
+        for (int i = 0; i < players.size(); i++) {
+            JsonNode hand = players.get(i).path("handCards");
+            assertEquals(room.getPlayerList().get(i).getHandCount(), hand.size());
+            hand.forEach(card -> assertEquals(hidden, card));
+            players.get(i).path("playedCards").forEach(card -> assertEquals(hidden, card));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.huex.liarbarback.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import redis.embedded.RedisServer;
+
+class RedisRoomStoreTests {
+    private static RedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Test
+    void codecRoundTripsAStartedGame() {
+        Room room = new Room("ABCDEF");
+        for (int i = 0; i < 4; i++) {
+            room.addPlayer(new Player("user" + i));
+        }
+        room.getPlayerList().get(0).setHost(true);
+        room.startGame(42L);
+        room.autoPlay(room.getPlayerList().get(0).getUserId());
+
+        Room copy = RoomCodec.decode(RoomCodec.encode(room));
+        assertEquals(room.toString(), copy.toString());
+        assertEquals(room.getVersion(), copy.getVersion());
+        assertEquals(room.getTurn(), copy.getTurn());
+        assertEquals(room.getDeck(), copy.getDeck());
+        assertEquals(room.getCurrentClaimRank(), copy.getCurrentClaimRank());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(room.getPlayerList().get(i).getHand(), copy.getPlayerList().get(i).getHand());
+            assertEquals(room.getPlayerList().get(i).getPlayed(), copy.getPlayerList().get(i).getPlayed());
+        }
+    }
+
+    @Test
+    void writesAreVersionedAndChangesReachOtherNodes() throws InterruptedException {
+        RedisRoomStore node1 = new RedisRoomStore(connectionFactory, 60000);
+        RedisRoomStore node2 = new RedisRoomStore(connectionFactory, 60000);
+        BlockingQueue<RoomStore.RoomChange> changes = new LinkedBlockingQueue<>();
+        node2.subscribe(changes::add);
+        // 订阅是异步建立的，先确认能收到消息
+        RoomStore.RoomChange ping = new RoomStore.RoomChange("node1", "PING00", 0);
+        do {
+            node1.publish(ping);
+        } while (changes.poll(100, TimeUnit.MILLISECONDS) == null);
+        changes.clear();
+
+        byte[] v1 = {1}, v2 = {2};
+        assertTrue(node1.save("ROOM01", -1, 1, v1));
+        assertFalse(node2.save("ROOM01", -1, 1, v2));
+        assertTrue(node2.contains("ROOM01"));
+        assertArrayEquals(v1, node2.load("ROOM01").orElseThrow());
+
+        assertTrue(node2.save("ROOM01", 1, 3, v2));
+        assertFalse(node1.save("ROOM01", 1, 2, v1));
+        assertArrayEquals(v2, node1.load("ROOM01").orElseThrow());
+
+        node1.publish(new RoomStore.RoomChange("node1", "ROOM01", 3));
+        assertEquals(new RoomStore.RoomChange("node1", "ROOM01", 3), changes.poll(2, TimeUnit.SECONDS));
+
+        assertFalse(node1.delete("ROOM01", 1));
+        assertTrue(node1.delete("ROOM01", 3));
+        assertFalse(node2.contains("ROOM01"));
+        node1.close();
+        node2.close();
+    }
+}
@@ -0,0 +1,325 @@
+package org.huex.liarbarback.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.huex.liarbarback.MsgHandler;
+import org.huex.liarbarback.concurrent.TimingWheel;
+import org.huex.liarbarback.events.RoomUpdateBus;
+import org.huex.liarbarback.journal.GameJournal;
+import org.huex.liarbarback.journal.JournalOp;
+import org.huex.liarbarback.journal.JournalRecord;
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.Reaper;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.managers.TurnTimer;
+import org.huex.liarbarback.metrics.GameMetrics;
+import org.huex.liarbarback.models.Message.MsgType;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.huex.liarbarback.spectators.SpectatorFanout;
+import org.huex.liarbarback.transport.ClientChannel;
+import org.huex.liarbarback.transport.ClientConnection;
+import org.huex.liarbarback.transport.ClientConnections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RoomSyncTests {
+    @TempDir Path dir;
+
+    /**
+     * 和其他节点共享的存储。contended 大于 0 时，每次写入前先替其他节点修改一次房间（切换 other 的准备状态），本节点的写入因此冲突
+     */
+    private static class ContendedStore extends MemoryRoomStore {
+        int contended;
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public boolean save(String roomId, long expectedVersion, long version, byte[] data) {
+            if (contended > 0 && contains(roomId)) {
+                contended--;
+                Room other = RoomCodec.decode(load(roomId).orElseThrow());
+                long base = other.getVersion();
+                Player player = other.getPlayer("other");
+                player.setReady(!player.isReady());
+                other.markUpdated();
+                super.save(roomId, base, other.getVersion(), RoomCodec.encode(other));
+            }
+            return super.save(roomId, expectedVersion, version, data);
+        }
+    }
+
+    private final ContendedStore store = new ContendedStore();
+    private final PlayerManager playerManager = new PlayerManager();
+    private final RoomManager roomManager = new RoomManager();
+    private final RoomUpdateBus bus = new RoomUpdateBus();
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 64);
+    private final Reaper reaper = new Reaper();
+    private final SessionManager sessionManager = new SessionManager();
+    private final SpectatorFanout spectatorFanout = new SpectatorFanout();
+    private final RoomSync sync = new RoomSync();
+    private final TurnTimer turnTimer = new TurnTimer();
+    private final GameMetrics metrics = new GameMetrics();
+    private final MsgHandler handler = new MsgHandler();
+    private final ClientConnections connections = new ClientConnections();
+    private final List<Integer> sent = new ArrayList<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    RoomSyncTests() {
+        ReflectionTestUtils.setField(roomManager, "playerManager", playerManager);
+        ReflectionTestUtils.setField(bus, "roomManager", roomManager);
+        ReflectionTestUtils.setField(reaper, "roomManager", roomManager);
+        ReflectionTestUtils.setField(reaper, "playerManager", playerManager);
+        ReflectionTestUtils.setField(reaper, "roomUpdates", bus);
+        ReflectionTestUtils.setField(reaper, "timingWheel", wheel);
+        ReflectionTestUtils.setField(reaper, "journal", GameJournal.disabled());
+        ReflectionTestUtils.setField(reaper, "playerIdleMillis", 60000L);
+        ReflectionTestUtils.setField(reaper, "sessionIdleMillis", 60000L);
+        ReflectionTestUtils.setField(sync, "store", store);
+        ReflectionTestUtils.setField(sync, "roomManager", roomManager);
+        ReflectionTestUtils.setField(sync, "playerManager", playerManager);
+        ReflectionTestUtils.setField(sync, "roomUpdates", bus);
+        ReflectionTestUtils.setField(sync, "reaper", reaper);
+        ReflectionTestUtils.setField(sessionManager, "playerManager", playerManager);
+        ReflectionTestUtils.setField(sessionManager, "roomManager", roomManager);
+        ReflectionTestUtils.setField(sessionManager, "roomUpdates", bus);
+        ReflectionTestUtils.setField(sessionManager, "reaper", reaper);
+        ReflectionTestUtils.setField(sessionManager, "roomSync", sync);
+        ReflectionTestUtils.setField(sessionManager, "journal", GameJournal.disabled());
+        ReflectionTestUtils.setField(turnTimer, "roomManager", roomManager);
+        ReflectionTestUtils.setField(turnTimer, "roomUpdates", bus);
+        ReflectionTestUtils.setField(turnTimer, "timingWheel", wheel);
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(metrics, "sessionManager", sessionManager);
+        metrics.register();
+        ReflectionTestUtils.setField(spectatorFanout, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(spectatorFanout, "roomManager", roomManager);
+        ReflectionTestUtils.setField(handler, "roomManager", roomManager);
+        ReflectionTestUtils.setField(handler, "playerManager", playerManager);
+        ReflectionTestUtils.setField(handler, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(handler, "roomUpdates", bus);
+        ReflectionTestUtils.setField(handler, "reaper", reaper);
+        ReflectionTestUtils.setField(handler, "roomSync", sync);
+        ReflectionTestUtils.setField(handler, "journal", GameJournal.disabled());
+        ReflectionTestUtils.setField(handler, "spectatorFanout", spectatorFanout);
+        ReflectionTestUtils.setField(handler, "turnTimer", turnTimer);
+        ReflectionTestUtils.setField(handler, "metrics", metrics);
+        ReflectionTestUtils.setField(connections, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(connections, "msgHandler", handler);
+        ReflectionTestUtils.setField(connections, "reaper", reaper);
+        ReflectionTestUtils.setField(connections, "spectatorFanout", spectatorFanout);
+    }
+
+    @AfterEach
+    void stop() {
+        wheel.stop();
+        roomManager.shutdown();
+        reaper.shutdown();
+        sessionManager.shutdown();
+    }
+
+    // other 在其他节点上，本节点只登记 localUsers
+    private Room sharedRoom(String... localUsers) {
+        Room room = new Room("ABCDEF");
+        Player other = new Player("other");
+        other.setHost(true);
+        other.setRoomId(room.getId());
+        room.addPlayer(other);
+        for (String userId : localUsers) {
+            Player player = new Player(userId);
+            player.setRoomId(room.getId());
+            room.addPlayer(player);
+            playerManager.addPlayer(player);
+        }
+        roomManager.addRoom(room);
+        assertTrue(store.save(room.getId(), -1, room.getVersion(), RoomCodec.encode(room)));
+        room.setStoredVersion(room.getVersion());
+        return room;
+    }
+
+    private Room stored() {
+        return RoomCodec.decode(store.load("ABCDEF").orElseThrow());
+    }
+
+    // 记录收到的消息类型，欢迎消息之后开始记录
+    private ClientConnection connect(String userId) {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        ClientConnection connection = connections.open(new ClientChannel() {
+            public String getUserId() { return userId; }
+            public String getSubprotocol() { return null; }
+            public boolean isOpen() { return true; }
+            public Map<String, Object> getAttributes() { return attributes; }
+            public void sendText(String text, Consumer<Throwable> callback) {
+                try {
+                    sent.add(mapper.readTree(text).get("msgType").asInt());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                callback.accept(null);
+            }
+            public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) { callback.accept(null); }
+            public void close(int code, String reason) {}
+        }, "test");
+        sent.clear();
+        return connection;
+    }
+
+    @Test
+    void leaveRetriedAfterConflictRepliesOnceAndLeavesNoGhost() {
+        Room room = sharedRoom("leaver");
+        ClientConnection connection = connect("leaver");
+        store.contended = 1;
+
+        assertTrue(sync.execute(room, () -> handler.handleLeaveRoom(connection, room)));
+        assertEquals(1, sync.getConflictCount());
+        assertNull(room.getPlayer("leaver"));
+        Room stored = stored();
+        assertNull(stored.getPlayer("leaver"));
+        // 其他节点的修改保留下来
+        assertTrue(stored.getPlayer("other").isReady());
+        assertFalse(playerManager.getPlayer("leaver").isPresent());
+        assertEquals(List.of(MsgType.ROOM_LEFT.ordinal()), sent);
+        assertEquals(1, bus.getMarkedCount());
+    }
+
+    @Test
+    void joinRetriedAfterConflictRegistersTheSavedPlayer() {
+        Room room = sharedRoom();
+        ClientConnection connection = connect("joiner");
+        store.contended = 1;
+
+        assertTrue(sync.execute(room, () -> handler.handleJoinRoom(connection, room.getId())));
+        assertEquals(1, sync.getConflictCount());
+        Player joined = room.getPlayer("joiner");
+        assertNotNull(joined);
+        assertSame(joined, playerManager.getPlayer("joiner").orElseThrow());
+        assertSame(joined, connection.getPlayer());
+        assertEquals(2, room.getPlayerList().size());
+        assertNotNull(stored().getPlayer("joiner"));
+        assertEquals(List.of(), sent);
+        assertEquals(1, bus.getMarkedCount());
+    }
+
+    @Test
+    void givingUpDropsTheAttemptsSideEffects() {
+        Room room = sharedRoom("leaver");
+        Player leaver = room.getPlayer("leaver");
+        ClientConnection connection = connect("leaver");
+        store.contended = Integer.MAX_VALUE;
+        AtomicInteger gaveUp = new AtomicInteger();
+
+        assertFalse(sync.execute(room, () -> handler.handleLeaveRoom(connection, room), gaveUp::incrementAndGet));
+        assertEquals(1, gaveUp.get());
+        // 房间换成了存储中的状态，玩家还是本节点登记的那个对象
+        assertSame(leaver, room.getPlayer("leaver"));
+        assertSame(leaver, playerManager.getPlayer("leaver").orElseThrow());
+        assertEquals(stored().getVersion(), room.getVersion());
+        assertEquals(List.of(), sent);
+        assertEquals(0, bus.getMarkedCount());
+    }
+
+    @Test
+    void journalsOnlyTheAttemptThatWasSaved() throws IOException {
+        Room room = new Room("ABCDEF");
+        Player host = new Player("host");
+        host.setHost(true);
+        host.setRoomId(room.getId());
+        room.addPlayer(host);
+        room.setStoredVersion(-1);
+        // 其他节点先写入了房间，本节点第一次写入时版本冲突
+        Room other = RoomCodec.decode(RoomCodec.encode(room));
+        other.markUpdated();
+        assertTrue(store.save(room.getId(), -1, other.getVersion(), RoomCodec.encode(other)));
+
+        AtomicInteger attempts = new AtomicInteger();
+        try (GameJournal journal = new GameJournal(dir, 16, false, 1, 64)) {
+            ReflectionTestUtils.setField(sync, "journal", journal);
+            assertTrue(sync.execute(room, () -> {
+                attempts.incrementAndGet();
+                room.getPlayer("host").setReady(true);
+                room.markUpdated();
+                journal.append(room, JournalOp.PREPARE, "host", 0, 1);
+                return true;
+            }));
+            assertEquals(1, sync.getConflictCount());
+        }
+        assertEquals(2, attempts.get());
+
+        List<JournalRecord> records = new ArrayList<>();
+        try (GameJournal journal = new GameJournal(dir, 16, false, 1, 64)) {
+            journal.replay(records::add);
+        }
+        assertEquals(1, records.size());
+        assertEquals(JournalOp.PREPARE, records.get(0).op());
+        assertEquals(records.get(0).seq(), room.getJournalSeq());
+    }
+
+    @Test
+    void flushReappliesLocalChangesAfterConflict() throws Exception {
+        Room room = sharedRoom("local");
+        room.addPlayer(new Player("remote"));
+        room.markUpdated();
+        ClientConnection connection = connect("local");
+        roomManager.submit(room, () -> {
+            // local 的连接在本节点上，other 和 remote 在其他节点上
+            room.getPlayer("local").setChannel(connection.getChannel());
+            room.startGame(11L);
+            return sync.replicate(room);
+        }).get();
+        ReflectionTestUtils.setField(turnTimer, "timeoutMillis", 20L);
+        roomManager.submit(room, () -> {
+            turnTimer.update(room);
+            return true;
+        }).get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (turnTimer.getExpiredCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        ReflectionTestUtils.setField(turnTimer, "timeoutMillis", 60000L);
+        long turn = roomManager.submit(room, room::getTurn).get();
+        assertEquals(1, turnTimer.getExpiredCount());
+
+        store.contended = 1;
+        roomManager.submit(room, () -> {
+            // 本节点上 local 断线，写入时其他节点也修改了房间
+            room.getPlayer("local").setChannel(null);
+            ReflectionTestUtils.invokeMethod(handler, "flushRoom", room);
+            return true;
+        }).get();
+
+        assertEquals(1, sync.getConflictCount());
+        Room stored = stored();
+        assertTrue(stored.getPlayer("other").isReady());
+        assertFalse(stored.getPlayer("local").isActive());
+        assertEquals(turn, stored.getTurn());
+        assertEquals(2, turnTimer.getExpiredCount());
+        assertNotNull(room.getPlayer("local").getIdleTimeout());
+        assertEquals(stored.getVersion(), room.getStoredVersion());
+    }
+}
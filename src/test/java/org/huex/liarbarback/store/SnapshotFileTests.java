@@ -0,0 +1,60 @@
+package org.huex.liarbarback.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotFileTests {
+    @TempDir Path dir;
+
+    @Test
+    void restoresEveryRoomWritten() throws IOException {
+        List<Room> rooms = new ArrayList<>();
+        List<SnapshotFile.Entry> encoded = new ArrayList<>();
+        for (int r = 0; r < 50; r++) {
+            Room room = new Room("ROOM" + r);
+            for (int i = 0; i < 2 + r % 6; i++) {
+                room.addPlayer(new Player("user" + r + "-" + i));
+            }
+            if (r % 2 == 0) {
+                room.startGame(r);
+            }
+            rooms.add(room);
+            encoded.add(new SnapshotFile.Entry(r, RoomCodec.encode(room)));
+        }
+        Path file = dir.resolve("rooms.snapshot");
+        SnapshotFile.write(file, encoded);
+
+        SnapshotFile.Snapshot snapshot = SnapshotFile.read(file);
+        assertEquals(rooms.size(), snapshot.rooms().size());
+        for (int r = 0; r < rooms.size(); r++) {
+            Room restored = RoomCodec.decode(snapshot.rooms().get(r).room());
+            assertEquals(r, snapshot.rooms().get(r).journalSeq());
+            assertEquals(rooms.get(r).toString(), restored.toString());
+            assertEquals(rooms.get(r).getVersion(), restored.getVersion());
+        }
+    }
+
+    @Test
+    void rejectsTruncatedSnapshot() throws IOException {
+        Room room = new Room("ABCDEF");
+        room.addPlayer(new Player("user0"));
+        Path file = dir.resolve("rooms.snapshot");
+        long size = SnapshotFile.write(file, List.of(new SnapshotFile.Entry(0, RoomCodec.encode(room))));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+}
@@ -0,0 +1,22 @@
+package org.huex.liarbarback.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TraceBufferTests {
+
+    @Test
+    void keepsOnlyTheLatestEventsInOrder() {
+        TraceBuffer buffer = new TraceBuffer(3);
+        for (int i=1;i<=5;i++) {
+            buffer.record(TraceOp.PLAY_CARDS, "user" + i, i, 2000, i!=4);
+        }
+        String[] lines = buffer.dump().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("user3\tv3\t2us\tok"));
+        assertTrue(lines[1].contains("user4\tv4\t2us\tfailed"));
+        assertTrue(lines[2].contains("user5"));
+    }
+}
@@ -0,0 +1,147 @@
+package org.huex.liarbarback.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.huex.liarbarback.MsgHandler;
+import org.huex.liarbarback.managers.Reaper;
+import org.huex.liarbarback.managers.PlayerManager;
+import org.huex.liarbarback.managers.RoomManager;
+import org.huex.liarbarback.managers.SessionManager;
+import org.huex.liarbarback.models.Message;
+import org.huex.liarbarback.models.Message.MsgType;
+import org.huex.liarbarback.models.Player;
+import org.huex.liarbarback.models.Room;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ClientConnectionTests {
+    private final PlayerManager playerManager = new PlayerManager();
+    private final RoomManager roomManager = new RoomManager();
+    private final ClientConnections connections = new ClientConnections();
+    private final List<String> sent = new ArrayList<>();
+
+    ClientConnectionTests() {
+        ReflectionTestUtils.setField(roomManager, "playerManager", playerManager);
+        connections.sessionManager = new SessionManager();
+        ReflectionTestUtils.setField(connections.sessionManager, "playerManager", playerManager);
+    }
+
+    private ClientConnection connect(String userId) {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        ClientChannel channel = new ClientChannel() {
+            public String getUserId() { return userId; }
+            public String getSubprotocol() { return null; }
+            public boolean isOpen() { return true; }
+            public Map<String, Object> getAttributes() { return attributes; }
+            public void sendText(String text, Consumer<Throwable> callback) {
+                sent.add(text);
+                callback.accept(null);
+            }
+            public void sendBinary(ByteBuffer bytes, Consumer<Throwable> callback) { callback.accept(null); }
+            public void close(int code, String reason) {}
+        };
+        connections.sessionManager.addSession(userId, channel);
+        return new ClientConnection(connections, channel);
+    }
+
+    @Test
+    void bindingPointsBothWays() {
+        ClientConnection connection = connect("user0");
+        Room room = roomManager.createRoom("user0");
+        Player player = room.getPlayer("user0");
+        connection.bind(player, room);
+        assertTrue(connection.isBound());
+        assertSame(connection.getChannel(), player.getChannel());
+        assertSame(room, connection.getRoom());
+
+        connection.unbind();
+        assertFalse(connection.isBound());
+        assertNull(player.getChannel());
+    }
+
+    @Test
+    void removingThePlayerInvalidatesTheBinding() {
+        ClientConnection connection = connect("user0");
+        Room room = roomManager.createRoom("user0");
+        connection.bind(room.getPlayer("user0"), room);
+        playerManager.removePlayer("user0");
+        assertFalse(connection.isBound());
+
+        ClientConnection other = connect("user1");
+        Player player = new Player("user1");
+        player.setRoomId(room.getId());
+        room.addPlayer(player);
+        playerManager.addPlayer(player);
+        other.bind(player, room);
+        room.removePlayer("user1");
+        assertFalse(other.isBound());
+    }
+
+    @Test
+    void newerConnectionTakesOverTheBroadcasts() {
+        ClientConnection old = connect("user0");
+        Room room = roomManager.createRoom("user0");
+        Player player = room.getPlayer("user0");
+        old.bind(player, room);
+
+        ClientConnection current = connect("user0");
+        assertSame(current.getChannel(), player.getChannel());
+        assertFalse(old.isBound());
+        // 旧连接不能再抢回绑定
+        old.bind(player, room);
+        assertSame(current.getChannel(), player.getChannel());
+    }
+
+    @Test
+    void floodedConnectionKeepsABoundedBacklog() {
+        // 处理由测试手动完成，期间收到的消息都在排队
+        List<CompletableFuture<Boolean>> handled = new ArrayList<>();
+        connections.msgHandler = new MsgHandler() {
+            @Override
+            public CompletableFuture<Boolean> handleMsg(Message<?> message, ClientConnection connection) {
+                CompletableFuture<Boolean> result = new CompletableFuture<>();
+                handled.add(result);
+                return result;
+            }
+
+            @Override
+            public Executor getInboundExecutor() {
+                return Runnable::run;
+            }
+        };
+        connections.reaper = new Reaper();
+        connections.maxPending = 8;
+        ClientConnection connection = connect("user0");
+
+        for (int i=0;i<100000;i++) {
+            connection.receive(new Message<>(MsgType.SKIP, null));
+        }
+        assertEquals(8, connection.getPendingCount());
+        assertEquals(1, handled.size());
+        // 整段拒绝只回复一次错误
+        assertEquals(1, sent.stream().filter(text -> text.contains("Too many pending messages")).count());
+
+        for (int i=0;i<8;i++) {
+            handled.get(i).complete(true);
+        }
+        assertEquals(8, handled.size());
+        assertEquals(0, connection.getPendingCount());
+
+        connection.receive(new Message<>(MsgType.SKIP, null));
+        assertEquals(1, connection.getPendingCount());
+        assertEquals(9, handled.size());
+    }
+}
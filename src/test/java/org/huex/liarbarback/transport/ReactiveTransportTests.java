@@ -0,0 +1,73 @@
+package org.huex.liarbarback.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.huex.liarbarback.WireFormat;
+import org.huex.liarbarback.models.Message;
+import org.huex.liarbarback.models.MessageBinaryDecoder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"liarbar.reactive.enabled=true", "liarbar.reactive.port=0"})
+class ReactiveTransportTests {
+    @Autowired private ReactiveTransport transport;
+
+    // 收到的文本和二进制消息
+    private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+
+    private WebSocket connect(String userId, String subprotocol) throws Exception {
+        WebSocket.Builder builder = HttpClient.newHttpClient().newWebSocketBuilder();
+        if (subprotocol != null) {
+            builder.subprotocols(subprotocol);
+        }
+        return builder.buildAsync(URI.create("ws://localhost:" + transport.getPort() + "/api/ws/" + userId),
+            new WebSocket.Listener() {
+                @Override
+                public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                    received.add(data.toString());
+                    webSocket.request(1);
+                    return null;
+                }
+
+                @Override
+                public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+                    ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+                    copy.put(data).flip();
+                    received.add(copy);
+                    webSocket.request(1);
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void servesJsonWithoutSubprotocol() throws Exception {
+        WebSocket socket = connect("reactive-json", null);
+        assertEquals("", socket.getSubprotocol());
+        assertTrue(((String) received.poll(10, TimeUnit.SECONDS)).contains("Welcome"));
+        socket.sendText("{\"msgType\":\"CREATE_ROOM\"}", true).join();
+        assertTrue(((String) received.poll(10, TimeUnit.SECONDS)).contains("\"playerList\""));
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+
+    @Test
+    void negotiatesBinaryFormat() throws Exception {
+        WebSocket socket = connect("reactive-binary", WireFormat.BINARY_SUBPROTOCOL);
+        assertEquals(WireFormat.BINARY_SUBPROTOCOL, socket.getSubprotocol());
+        Message<?> welcome = new MessageBinaryDecoder().decode((ByteBuffer) received.poll(10, TimeUnit.SECONDS));
+        assertEquals(Message.MsgType.WELCOME, welcome.getMsgType());
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+    }
+}